@@ -25,6 +25,7 @@ import processing.core.PImage;
 
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
@@ -39,6 +40,36 @@ public class AntiAliased implements Projection {
     int ssWide;
     int ssHigh;
     int superSampling;
+    int numPoints;
+
+    // Sampling kernel tables, derived from positions/subpixels: the x/y
+    // of every subpixel, each point's subpixel bounding box, and
+    // 2^32 / subpixel count rounded up so that averages are a multiply.
+    short[] subX;
+    short[] subY;
+    int[] minX;
+    int[] minY;
+    int[] maxX;
+    int[] maxY;
+    long[] reciprocals;
+
+    // Subpixels summed in 16 bit lanes before they could overflow.
+    static final int LANE_SUBPIXELS = 256;
+
+    // Weighted filters: subweights as 16.16 fixed point, each point's
+    // weights summing to 1.  Null for the BOX filter.
+    static final int WEIGHT_ONE = 1 << 16;
+    ReconstructionFilter filter = ReconstructionFilter.BOX;
+    int[] fixedWeights;
+
+    // Point centers in subpixels, NaN for points without a panel.
+    float[] centerX;
+    float[] centerY;
+
+    // The BOX projection these tables derive from, and its filtered views.
+    AntiAliased box = this;
+    final Map<ReconstructionFilter, AntiAliased> filtered =
+	new EnumMap<ReconstructionFilter, AntiAliased>(ReconstructionFilter.class);
 
     private static final Logger logger = Logger.getLogger(AntiAliased.class.getName());
 
@@ -47,6 +78,7 @@ public class AntiAliased implements Projection {
 	float ssOff = (superSampling - 1f) / 2f;
 
 	this.superSampling = superSampling;
+	this.numPoints = model.size;
 	this.ssHigh = POINTS_HIGH * superSampling;
 	this.ssWide = POINTS_WIDE * superSampling;
 
@@ -56,6 +88,16 @@ public class AntiAliased implements Projection {
 	float maxDY = 0;
 
 	this.positions = new int[ssHigh * ssWide + 1];
+	this.centerX = new float[model.size];
+	this.centerY = new float[model.size];
+	Arrays.fill(centerX, Float.NaN);
+	Arrays.fill(centerY, Float.NaN);
+
+	CXPoint[] slots = new CXPoint[model.size];
+	float[] xs = new float[model.size];
+	float[] ys = new float[model.size];
+	int[] order = new int[model.size];
+	int nSlots = 0;
 	
 	for (LXPoint lxp : model.points) {
 	    CXPoint cxp = (CXPoint) lxp;
@@ -68,6 +110,14 @@ public class AntiAliased implements Projection {
 	    this.tree = this.tree.add(cxp, Geometries.point(coords[0] * superSampling + ssOff,
 							    coords[1] * superSampling + ssOff));
 
+	    slots[nSlots] = cxp;
+	    xs[nSlots] = coords[0] * superSampling + ssOff;
+	    ys[nSlots] = coords[1] * superSampling + ssOff;
+	    centerX[cxp.index] = xs[nSlots];
+	    centerY[cxp.index] = ys[nSlots];
+	    order[nSlots] = cxp.index;
+	    nSlots++;
+
 	    pixels[cxp.index] = new Pixel(cxp);
 
 	    // Compute the out-of-bounds regions.
@@ -79,6 +129,16 @@ public class AntiAliased implements Projection {
 	    }
 	}
 
+	// Nearest point for every in-bounds subpixel, found on a bucket
+	// grid in parallel rather than one R-tree query per subpixel.
+	final float floorMinDX = minDX, floorMaxDX = maxDX, floorMinDY = minDY;
+	NearestPointGrid grid = new NearestPointGrid(Arrays.copyOf(xs, nSlots),
+						     Arrays.copyOf(ys, nSlots),
+						     Arrays.copyOf(order, nSlots),
+						     ssWide, ssHigh, superSampling);
+	int[] nearest = grid.nearestTable(ssWide, ssHigh, 100, (i, j) ->
+	    !(j >= floorMinDY && (i < floorMinDX || i >= floorMaxDX)));
+
 	int pCount = 0;
 
 	for (int jInv = 0; jInv < ssHigh; jInv++) {
@@ -86,18 +146,11 @@ public class AntiAliased implements Projection {
 	    for (int i = 0; i < ssWide; i++) {
 		int idx = (j * ssWide) + i;
 
-		if (j >= minDY && (i < minDX || i >= maxDX)) {
+		if (nearest[idx] < 0) {
 		    continue;
 		}
-		
-		for (Entry<CXPoint, Point> point :
-			 this.tree.nearest(Geometries.point(i, j), 100, 1).toBlocking().toIterable()) {
-		    CXPoint cxp = point.value();
-		    Point geo = point.geometry();
-		    pixels[cxp.index].subs.add(idx);
-		    pCount++;
-		    break;
-		}
+		pixels[slots[nearest[idx]].index].subs.add(idx);
+		pCount++;
 	    }
 	}
 
@@ -127,11 +180,11 @@ public class AntiAliased implements Projection {
 
 	for (LXPoint lxp : points) {
 	    CXPoint cxp = (CXPoint)lxp;
+	    positions[lxp.index] = position;
 	    if (cxp.panel == null) {
 		// TODO interior lighting
 		continue;
 	    }
-	    positions[lxp.index] = position;
 
 	    for (int sub : pixels[lxp.index].subs) {
 		subpixels[position] = sub;
@@ -143,6 +196,184 @@ public class AntiAliased implements Projection {
 	// for (LXPoint lxp : model.points) {
 	//     buildWeights(lxp);
 	// }
+
+	buildKernel();
+    }
+
+    /**
+     * Restores the tables saved by {@link ProjectionCache}.  Only the
+     * R-tree used by lookupPoint() is rebuilt.
+     */
+    AntiAliased(LXModel model, int superSampling, int[] positions, int[] subpixels) {
+	float ssOff = (superSampling - 1f) / 2f;
+
+	this.superSampling = superSampling;
+	this.numPoints = model.size;
+	this.ssHigh = POINTS_HIGH * superSampling;
+	this.ssWide = POINTS_WIDE * superSampling;
+	this.positions = positions;
+	this.subpixels = subpixels;
+	this.subweights = new float[subpixels.length];
+	this.centerX = new float[model.size];
+	this.centerY = new float[model.size];
+	Arrays.fill(centerX, Float.NaN);
+	Arrays.fill(centerY, Float.NaN);
+
+	for (LXPoint lxp : model.points) {
+	    CXPoint cxp = (CXPoint) lxp;
+	    if (cxp.panel == null) {
+		continue;
+	    }
+	    float []coords = ConeDownModel.pointToProjectionCoords(cxp);
+	    centerX[cxp.index] = coords[0] * superSampling + ssOff;
+	    centerY[cxp.index] = coords[1] * superSampling + ssOff;
+
+	    this.tree = this.tree.add(cxp, Geometries.point(coords[0] * superSampling + ssOff,
+							    coords[1] * superSampling + ssOff));
+	}
+
+	buildKernel();
+    }
+
+    void buildKernel() {
+	this.subX = new short[subpixels.length];
+	this.subY = new short[subpixels.length];
+	this.minX = new int[numPoints];
+	this.minY = new int[numPoints];
+	this.maxX = new int[numPoints];
+	this.maxY = new int[numPoints];
+	this.reciprocals = new long[numPoints];
+
+	for (int p = 0; p < numPoints; p++) {
+	    minX[p] = minY[p] = Integer.MAX_VALUE;
+	    maxX[p] = maxY[p] = Integer.MIN_VALUE;
+	    for (int off = positions[p]; off < positions[p + 1]; off++) {
+		int x = subpixels[off] % ssWide;
+		int y = subpixels[off] / ssWide;
+		subX[off] = (short) x;
+		subY[off] = (short) y;
+		minX[p] = Math.min(minX[p], x);
+		minY[p] = Math.min(minY[p], y);
+		maxX[p] = Math.max(maxX[p], x);
+		maxY[p] = Math.max(maxY[p], y);
+	    }
+	    int n = positions[p + 1] - positions[p];
+	    if (fixedWeights == null) {
+		Arrays.fill(subweights, positions[p], positions[p + 1], 1f / n);
+	    }
+	    // floor(sum * reciprocal / 2^32) == sum / n while sum <= 255 * n < 2^32 / n.
+	    reciprocals[p] = n == 0 ? 0 : ((1L << 32) + n - 1) / n;
+	}
+    }
+
+    /**
+     * Builds the tables for a weighted filter from a BOX projection.
+     * Every subpixel that belongs to some point's cell and lies within
+     * the filter radius of a point contributes to it, so the footprints
+     * of neighboring points overlap.
+     */
+    AntiAliased(AntiAliased box, ReconstructionFilter filter) {
+	this.box = box;
+	this.filter = filter;
+	this.tree = box.tree;
+	this.superSampling = box.superSampling;
+	this.ssWide = box.ssWide;
+	this.ssHigh = box.ssHigh;
+	this.centerX = box.centerX;
+	this.centerY = box.centerY;
+
+	boolean[] covered = new boolean[ssWide * ssHigh];
+	for (int sub : box.subpixels) {
+	    covered[sub] = true;
+	}
+
+	this.numPoints = box.numPoints;
+	double reach = filter.radius * superSampling;
+	int[] subs = new int[box.subpixels.length * 4];
+	double[] weights = new double[subs.length];
+	int n = 0;
+
+	this.positions = new int[numPoints + 1];
+	for (int p = 0; p < numPoints; p++) {
+	    positions[p] = n;
+	    if (Float.isNaN(centerX[p])) {
+		continue;
+	    }
+	    int x0 = Math.max(0, (int) Math.ceil(centerX[p] - reach));
+	    int x1 = Math.min(ssWide - 1, (int) Math.floor(centerX[p] + reach));
+	    int y0 = Math.max(0, (int) Math.ceil(centerY[p] - reach));
+	    int y1 = Math.min(ssHigh - 1, (int) Math.floor(centerY[p] + reach));
+	    double sum = 0;
+
+	    for (int y = y0; y <= y1; y++) {
+		for (int x = x0; x <= x1; x++) {
+		    if (!covered[y * ssWide + x]) {
+			continue;
+		    }
+		    double w = filter.weight(Math.hypot(x - centerX[p], y - centerY[p]) / superSampling);
+		    if (w == 0) {
+			continue;
+		    }
+		    if (n == subs.length) {
+			subs = Arrays.copyOf(subs, n * 2);
+			weights = Arrays.copyOf(weights, n * 2);
+		    }
+		    subs[n] = y * ssWide + x;
+		    weights[n] = w;
+		    sum += w;
+		    n++;
+		}
+	    }
+
+	    if (sum <= 0) {
+		// Nothing usable in reach, keep the point's own cell.
+		n = positions[p];
+		for (int off = box.positions[p]; off < box.positions[p + 1]; off++) {
+		    if (n == subs.length) {
+			subs = Arrays.copyOf(subs, n * 2);
+			weights = Arrays.copyOf(weights, n * 2);
+		    }
+		    subs[n] = box.subpixels[off];
+		    weights[n] = 1;
+		    sum += 1;
+		    n++;
+		}
+	    }
+	    for (int off = positions[p]; off < n; off++) {
+		weights[off] /= sum;
+	    }
+	}
+	positions[numPoints] = n;
+
+	this.subpixels = Arrays.copyOf(subs, n);
+	this.subweights = new float[n];
+	this.fixedWeights = new int[n];
+	for (int off = 0; off < n; off++) {
+	    subweights[off] = (float) weights[off];
+	    fixedWeights[off] = (int) Math.round(weights[off] * WEIGHT_ONE);
+	}
+
+	buildKernel();
+    }
+
+    public Projection withFilter(ReconstructionFilter filter) {
+	if (filter == this.filter) {
+	    return this;
+	}
+	if (box != this) {
+	    return box.withFilter(filter);
+	}
+	synchronized (filtered) {
+	    AntiAliased view = filtered.get(filter);
+	    if (view == null) {
+		long start = System.currentTimeMillis();
+		view = new AntiAliased(this, filter);
+		logger.info("Built " + superSampling + "x " + filter + " filter, " + view.subpixels.length +
+			    " weights in " + (System.currentTimeMillis() - start) + "ms");
+		filtered.put(filter, view);
+	    }
+	    return view;
+	}
     }
 
     public CXPoint lookupPoint(float x, float y) {
@@ -164,28 +395,131 @@ public class AntiAliased implements Projection {
   }
 
   public int computePoint(CXPoint cxp, PImage img, int xoffset, int yoffset) {
-    float r = 0, g = 0, b = 0, a = 0;
+    int r = 0, g = 0, b = 0, a = 0;
     int end = positions[cxp.index + 1];
-    float w = 1f / (end - positions[cxp.index]);
+
+    if (fixedWeights != null) {
+      for (int off = positions[cxp.index]; off < end; off++) {
+	int s = img.get(subX[off] + xoffset, subY[off] + yoffset);
+	int w = fixedWeights[off];
+
+	r += w * red(s);
+	g += w * green(s);
+	b += w * blue(s);
+	a += w * alpha(s);
+      }
+      return weighted(r, g, b, a);
+    }
 
     for (int off = positions[cxp.index]; off < end; off++) {
-      int subpos = subpixels[off];
-      
-      int subx = subpos % ssWide;
-      int suby = subpos / ssWide;
+      int s = img.get(subX[off] + xoffset, subY[off] + yoffset);
 
-      subx += xoffset;
-      suby += yoffset;
+      r += red(s);
+      g += green(s);
+      b += blue(s);
+      a += alpha(s);
+    }
+    return average(r, g, b, a, reciprocals[cxp.index]);
+  }
 
-      int s = img.get(subx, suby);
+  static int average(int r, int g, int b, int a, long reciprocal) {
+    return LXColor.rgba((int) ((r * reciprocal) >>> 32), (int) ((g * reciprocal) >>> 32),
+			(int) ((b * reciprocal) >>> 32), (int) ((a * reciprocal) >>> 32));
+  }
+
+  static int weighted(int r, int g, int b, int a) {
+    return LXColor.rgba(clamp(r), clamp(g), clamp(b), clamp(a));
+  }
+
+  // Rounds a 16.16 weighted channel sum, which Lanczos lobes can push
+  // below 0 or above 255.
+  static int clamp(int sum) {
+    return Math.max(0, Math.min(255, (sum + WEIGHT_ONE / 2) >> 16));
+  }
 
-      // float w = subweights[off];
-      r += w * (float) red(s);
-      g += w * (float) green(s);
-      b += w * (float) blue(s);
-      a += w * (float) alpha(s);
+  /**
+   * Sums the channels of each point's subpixels in integer arithmetic,
+   * two channels per int, and divides by reciprocal multiply.  Points
+   * whose subpixels all land inside the image read pixels[] without
+   * clipping, directly at subpixels[] plus the offset when the image is
+   * a full-width super-sampled frame.
+   */
+  public void sampleAll(int[] srcPixels, int srcWidth, int srcHeight, int xoffset, int yoffset,
+			int[] pointIndices, int[] outColors) {
+    if (fixedWeights != null) {
+      sampleWeighted(srcPixels, srcWidth, srcHeight, xoffset, yoffset, pointIndices, outColors);
+      return;
+    }
+
+    int base = yoffset * srcWidth + xoffset;
+    boolean fullWidth = srcWidth == ssWide;
+
+    for (int k = 0; k < pointIndices.length; k++) {
+      int p = pointIndices[k];
+      int end = positions[p + 1];
+      boolean inside = minX[p] + xoffset >= 0 && maxX[p] + xoffset < srcWidth
+	&& minY[p] + yoffset >= 0 && maxY[p] + yoffset < srcHeight;
+      int r = 0, g = 0, b = 0, a = 0;
+
+      for (int off = positions[p]; off < end; ) {
+	int laneEnd = Math.min(end, off + LANE_SUBPIXELS);
+	int rb = 0, ag = 0;
+	if (inside && fullWidth) {
+	  for (; off < laneEnd; off++) {
+	    int s = srcPixels[subpixels[off] + base];
+	    rb += s & 0xff00ff;
+	    ag += (s >>> 8) & 0xff00ff;
+	  }
+	} else if (inside) {
+	  for (; off < laneEnd; off++) {
+	    int s = srcPixels[subY[off] * srcWidth + subX[off] + base];
+	    rb += s & 0xff00ff;
+	    ag += (s >>> 8) & 0xff00ff;
+	  }
+	} else {
+	  for (; off < laneEnd; off++) {
+	    int x = subX[off] + xoffset;
+	    int y = subY[off] + yoffset;
+	    if (x >= 0 && y >= 0 && x < srcWidth && y < srcHeight) {
+	      int s = srcPixels[y * srcWidth + x];
+	      rb += s & 0xff00ff;
+	      ag += (s >>> 8) & 0xff00ff;
+	    }
+	  }
+	}
+	r += rb >>> 16;
+	b += rb & 0xffff;
+	a += ag >>> 16;
+	g += ag & 0xffff;
+      }
+      outColors[p] = average(r, g, b, a, reciprocals[p]);
+    }
+  }
+
+  void sampleWeighted(int[] srcPixels, int srcWidth, int srcHeight, int xoffset, int yoffset,
+		      int[] pointIndices, int[] outColors) {
+    for (int k = 0; k < pointIndices.length; k++) {
+      int p = pointIndices[k];
+      int end = positions[p + 1];
+      boolean inside = minX[p] + xoffset >= 0 && maxX[p] + xoffset < srcWidth
+	&& minY[p] + yoffset >= 0 && maxY[p] + yoffset < srcHeight;
+      int r = 0, g = 0, b = 0, a = 0;
+
+      for (int off = positions[p]; off < end; off++) {
+	int x = subX[off] + xoffset;
+	int y = subY[off] + yoffset;
+	if (!inside && (x < 0 || y < 0 || x >= srcWidth || y >= srcHeight)) {
+	  continue;
+	}
+	int s = srcPixels[y * srcWidth + x];
+	int w = fixedWeights[off];
+	r += w * ((s >>> 16) & 0xff);
+	g += w * ((s >>> 8) & 0xff);
+	b += w * (s & 0xff);
+	a += w * (s >>> 24);
+      }
+      outColors[p] = weighted(r, g, b, a);
     }
-    return LXColor.rgba((int) r, (int) g, (int) b, (int) a);
   }
 
     public int factor() {
@@ -0,0 +1,61 @@
+package art.lookingup;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ArtNet ArtDmx data packets followed by ArtSync.  Sequence numbers are disabled, as with LX's
+ * ArtNetDatagram.
+ */
+public class ArtNetFormat implements UniverseFormat {
+  public static final int ARTNET_PORT = 6454;
+  public static final int ARTNET_HEADER_LENGTH = 18;
+  public static final int ARTSYNC_LENGTH = 14;
+
+  public int headerLength() {
+    return ARTNET_HEADER_LENGTH;
+  }
+
+  public int dataLength(int pointCount) {
+    // DMX data length must be even.
+    int dataLength = pointCount * 3;
+    return dataLength + dataLength % 2;
+  }
+
+  public void writeHeader(ByteBuffer packet, int universe, int dataLength) {
+    writeArtNetId(packet);
+    packet.put(8, (byte) 0x00);  // OpDmx 0x5000, little endian.
+    packet.put(9, (byte) 0x50);
+    packet.put(10, (byte) 0);  // Protocol version 14.
+    packet.put(11, (byte) 14);
+    packet.put(12, (byte) 0);  // Sequence, disabled.
+    packet.put(13, (byte) 0);  // Physical port.
+    packet.put(14, (byte) (universe & 0xff));
+    packet.put(15, (byte) ((universe >>> 8) & 0xff));
+    packet.put(16, (byte) ((dataLength >>> 8) & 0xff));
+    packet.put(17, (byte) (dataLength & 0xff));
+  }
+
+  public int syncLength() {
+    return ARTSYNC_LENGTH;
+  }
+
+  public void writeSync(ByteBuffer packet) {
+    writeArtNetId(packet);
+    packet.put(8, (byte) 0x00);  // OpSync 0x5200, little endian.
+    packet.put(9, (byte) 0x52);
+    packet.put(10, (byte) 0);
+    packet.put(11, (byte) 14);
+    packet.put(12, (byte) 0);
+    packet.put(13, (byte) 0);
+  }
+
+  public void beforeSend(ByteBuffer packet, boolean sync) {
+  }
+
+  static void writeArtNetId(ByteBuffer packet) {
+    byte[] id = {'A', 'r', 't', '-', 'N', 'e', 't', 0};
+    for (int i = 0; i < id.length; i++) {
+      packet.put(i, id[i]);
+    }
+  }
+}
@@ -15,6 +15,10 @@ import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -68,6 +72,8 @@ public class ConeDown extends PApplet {
   }
 
   private static final String LOG_FILENAME_PREFIX = "lookinguparts";
+  // How often frame time percentiles are written to the log.
+  private static final long PROFILE_LOG_INTERVAL_SECS = 60;
 
   // Reference to top-level LX instance
   private heronarts.lx.studio.LXStudio lx;
@@ -79,8 +85,12 @@ public class ConeDown extends PApplet {
 
   public static UIGammaSelector gammaControls;
   public static UIModeSelector modeSelector;
+  public static UIProfiler profiler;
   public static UIAudioMonitorLevels audioMonitorLevels;
   public static UIPixliteConfig pixliteConfig;
+  public static UIOutputConfig outputConfig;
+  public static UIRenderConfig renderConfig;
+  public static UISamplingMetrics samplingMetrics;
   public static UIMidiControl uiMidiControl;
   public static com.giantrainbow.OSCSensor oscSensor;
   public static OSCSensorUI oscSensorUI;
@@ -93,19 +103,118 @@ public class ConeDown extends PApplet {
   public static int DEFAULT_SUPER_SAMPLING = 2;
   public static int MAX_SUPER_SAMPLING = 4;
 
-  private static Projection projections[];
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static final Future<Projection>[] projections = new Future[MAX_SUPER_SAMPLING + 1];
+  // Filtered views of each level, by ReconstructionFilter ordinal.
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static final Future<Projection>[][] filteredProjections =
+      new Future[MAX_SUPER_SAMPLING + 1][ReconstructionFilter.values().length];
+  private static LXModel projectionModel;
+  private static long projectionModelKey;
+  private static final ExecutorService projectionBuilder = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "Projection builder");
+    t.setDaemon(true);
+    return t;
+  });
 
   @Override
   public void settings() {
     size(1400, 678, P3D);
   }
 
+  /**
+   * Returns the projection for a super-sampling level.  Levels are built on first use on a background
+   * thread; until the requested level is ready the nearest level that is already built is returned,
+   * so callers must size their images by {@link Projection#factor()}.  Blocks only when no level has
+   * been built yet.
+   */
   public static Projection getProjection(int ss) {
       ss = Math.min(ss, MAX_SUPER_SAMPLING);
       ss = Math.max(ss, MIN_SUPER_SAMPLING);
+      Future<Projection> requested = requestProjection(ss);
+      if (requested.isDone()) {
+	  return joinProjection(requested);
+      }
+      for (int d = 1; d <= MAX_SUPER_SAMPLING - MIN_SUPER_SAMPLING; d++) {
+	  for (int near : new int[] {ss - d, ss + d}) {
+	      if (near < MIN_SUPER_SAMPLING || near > MAX_SUPER_SAMPLING) {
+		  continue;
+	      }
+	      Future<Projection> built = projections[near];
+	      if (built != null && built.isDone()) {
+		  return joinProjection(built);
+	      }
+	  }
+      }
+      return joinProjection(requested);
+  }
+
+  /**
+   * Whether getProjection(ss) returns the requested level.  Starts building it if needed.
+   */
+  public static boolean isProjectionReady(int ss) {
+      ss = Math.min(ss, MAX_SUPER_SAMPLING);
+      ss = Math.max(ss, MIN_SUPER_SAMPLING);
+      return requestProjection(ss).isDone();
+  }
+
+  private static synchronized Future<Projection> requestProjection(final int ss) {
+      if (projections[ss] == null) {
+	  logger.info("Requesting " + ss + "x projection");
+	  projections[ss] = projectionBuilder.submit(() -> {
+	      long start = System.currentTimeMillis();
+	      Projection projection = ProjectionCache.get(projectionModel, projectionModelKey, ss);
+	      logger.info("Built " + ss + "x projection in " + (System.currentTimeMillis() - start) + "ms");
+	      return projection;
+	  });
+      }
       return projections[ss];
   }
 
+  /**
+   * Returns the projection for a super-sampling level, as getProjection(ss), sampling with a
+   * reconstruction filter.  Filtered tables are built on the same background thread as the levels;
+   * until they are ready the level is returned with the BOX filter.  Never blocks on a filter.
+   */
+  public static Projection getProjection(int ss, ReconstructionFilter filter) {
+      Projection projection = getProjection(ss);
+      Future<Projection> filtered = requestProjection(projection.factor(), filter);
+      if (filtered.isDone()) {
+	  return joinProjection(filtered);
+      }
+      return projection;
+  }
+
+  /**
+   * Whether getProjection(ss, filter) returns the requested level and filter.  Starts building them if
+   * needed.
+   */
+  public static boolean isProjectionReady(int ss, ReconstructionFilter filter) {
+      ss = Math.min(ss, MAX_SUPER_SAMPLING);
+      ss = Math.max(ss, MIN_SUPER_SAMPLING);
+      return requestProjection(ss, filter).isDone();
+  }
+
+  private static synchronized Future<Projection> requestProjection(final int ss, final ReconstructionFilter filter) {
+      final Future<Projection> level = requestProjection(ss);
+      if (filter == ReconstructionFilter.BOX) {
+	  return level;
+      }
+      if (filteredProjections[ss][filter.ordinal()] == null) {
+	  // Queued behind the level itself on the single builder thread, so the join does not wait.
+	  filteredProjections[ss][filter.ordinal()] = projectionBuilder.submit(() -> joinProjection(level).withFilter(filter));
+      }
+      return filteredProjections[ss][filter.ordinal()];
+  }
+
+  private static Projection joinProjection(Future<Projection> future) {
+      try {
+	  return future.get();
+      } catch (InterruptedException | ExecutionException ex) {
+	  throw new RuntimeException("Unable to build projection", ex);
+      }
+  }
+
   /**
    * Registers all patterns and effects that LX doesn't already have registered.
    * This check is important because LX just adds to a list.
@@ -164,17 +273,16 @@ public class ConeDown extends PApplet {
     } catch (IOException ex) {
       logger.log(Level.SEVERE, "Error creating log file: " + LOG_FILENAME_PREFIX, ex);
     }
+    FrameProfiler.startLogging(PROFILE_LOG_INTERVAL_SECS);
 
     LXModel model = ConeDownModel.createModel();
 
-    logger.info("Computing true projection");
-    projections = new Projection[MAX_SUPER_SAMPLING + 1];
-    projections[1] = new TrueProjection(model);
-    for (int i = 2; i <= MAX_SUPER_SAMPLING; i++) {
-	logger.info("Computing " + i + "x projection");
-	projections[i] = new AntiAliased(model, i);
-    }
-    logger.info("Computed all projections");
+    // Only the default level is needed to start, the others are built when a pattern asks for them.
+    long projectionStart = System.currentTimeMillis();
+    projectionModel = model;
+    projectionModelKey = ProjectionCache.modelKey(model);
+    getProjection(DEFAULT_SUPER_SAMPLING);
+    logger.info("Computed default projection in " + (System.currentTimeMillis() - projectionStart) + "ms");
 
     LXStudio.Flags flags = new LXStudio.Flags();
     //flags.showFramerate = false;
@@ -196,6 +304,7 @@ public class ConeDown extends PApplet {
     // Put this here because it needs to be after file loads in order to find appropriate channels.
     modeSelector = (UIModeSelector) new UIModeSelector(lx.ui, lx, audioMonitorLevels).setExpanded(true).addToContainer(lx.ui.leftPane.global);
     modeSelector.standardMode.setActive(true);
+    profiler = (UIProfiler) new UIProfiler(lx.ui).setExpanded(false).addToContainer(lx.ui.leftPane.global);
     //frameRate(GLOBAL_FRAME_RATE);
   }
 
@@ -226,6 +335,9 @@ public class ConeDown extends PApplet {
     gammaControls = (UIGammaSelector) new UIGammaSelector(lx.ui).setExpanded(false).addToContainer(lx.ui.leftPane.global);
     uiMidiControl = (UIMidiControl) new UIMidiControl(lx.ui, lx, modeSelector).setExpanded(false).addToContainer(lx.ui.leftPane.global);
     pixliteConfig = (UIPixliteConfig) new UIPixliteConfig(lx.ui, lx).setExpanded(false).addToContainer(lx.ui.leftPane.global);
+    outputConfig = (UIOutputConfig) new UIOutputConfig(lx.ui, lx).setExpanded(false).addToContainer(lx.ui.leftPane.global);
+    renderConfig = (UIRenderConfig) new UIRenderConfig(lx.ui).setExpanded(false).addToContainer(lx.ui.leftPane.global);
+    samplingMetrics = (UISamplingMetrics) new UISamplingMetrics(lx.ui, lx).setExpanded(false).addToContainer(lx.ui.leftPane.global);
     galacticJungle = (UIGalacticJungle) new UIGalacticJungle(lx.ui, lx).setExpanded(false).addToContainer(lx.ui.leftPane.global);
 
     lx.engine.midi.addListener(uiMidiControl);
@@ -247,6 +359,7 @@ public class ConeDown extends PApplet {
 
   public void draw() {
     // All is handled by LX Studio
+    GraphicsPool.disposePending();
   }
 
   // Configuration flags
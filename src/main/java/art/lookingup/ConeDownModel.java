@@ -407,7 +407,6 @@ public class ConeDownModel extends LXModel {
     for (int panelNum = 0; panelNum < Panel.numPanelsAround[0]; panelNum++) {
       Panel panel = new Panel((panelNum%2==0)? Panel.PanelType.A1: Panel.PanelType.A2, yOffset, panelNum,
       yCoordOffset, panel1Radius);
-      exportPanelPoints(panel);
       conePanels.add(panel);
       coneLayer.add(panel);
       allPoints.addAll(panel.getPoints());
@@ -523,8 +522,6 @@ public class ConeDownModel extends LXModel {
     rowConeIncrLength = computedConeHeight / (POINTS_HIGH - 1);
     colScoopIncrLength = computedScoopWidth / (POINTS_WIDE - 1);
     rowScoopIncrLength = computedScoopHeight / (POINTS_HIGH - 1);
-
-    exportPLY(points);
   }
 
   static public void exportPanelPoints(Panel panel) {
@@ -0,0 +1,115 @@
+package art.lookingup;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * E1.31 (sACN) data packets and E1.31-2016 synchronization packets.  Each packet keeps its own
+ * sequence number in place, so skipped universes don't advance their sequence.
+ * <p>
+ * sACN universes start at 1, so the ArtNet universe numbers from the {@link UniverseMap} are sent as
+ * universe + 1.</p>
+ */
+public class E131Format implements UniverseFormat {
+  public static final int E131_PORT = 5568;
+  public static final int E131_HEADER_LENGTH = 126;
+  public static final int E131_SYNC_LENGTH = 49;
+  public static final int DEFAULT_PRIORITY = 100;
+
+  static final int SEQUENCE_OFFSET = 111;
+  static final int SYNC_SEQUENCE_OFFSET = 44;
+
+  static final UUID CID = UUID.nameUUIDFromBytes("ConeDown".getBytes(StandardCharsets.US_ASCII));
+  static final String SOURCE_NAME = "ConeDown";
+
+  public final int priority;
+  public final int syncUniverse;
+
+  /**
+   * @param priority The sACN priority, 0-200.
+   * @param syncUniverse The universe synchronization packets are sent on, or 0 for no sync.
+   */
+  public E131Format(int priority, int syncUniverse) {
+    this.priority = priority;
+    this.syncUniverse = syncUniverse;
+  }
+
+  /**
+   * The multicast group for an sACN universe, 239.255.hi.lo.
+   */
+  static public InetSocketAddress multicastAddress(int e131Universe) {
+    return new InetSocketAddress("239.255." + ((e131Universe >>> 8) & 0xff) + "." + (e131Universe & 0xff), E131_PORT);
+  }
+
+  public int headerLength() {
+    return E131_HEADER_LENGTH;
+  }
+
+  public int dataLength(int pointCount) {
+    return pointCount * 3;
+  }
+
+  public void writeHeader(ByteBuffer packet, int universe, int dataLength) {
+    int length = E131_HEADER_LENGTH + dataLength;
+    writeRootLayer(packet, length, 0x00000004);  // VECTOR_ROOT_E131_DATA
+
+    // Framing layer.
+    putFlagsAndLength(packet, 38, length - 38);
+    packet.putInt(40, 0x00000002);  // VECTOR_E131_DATA_PACKET
+    byte[] name = SOURCE_NAME.getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < 64; i++) {
+      packet.put(44 + i, i < name.length ? name[i] : 0);
+    }
+    packet.put(108, (byte) priority);
+    packet.putShort(109, (short) syncUniverse);
+    packet.put(SEQUENCE_OFFSET, (byte) 0);
+    packet.put(112, (byte) 0);  // Options.
+    packet.putShort(113, (short) (universe + 1));
+
+    // DMP layer.
+    putFlagsAndLength(packet, 115, length - 115);
+    packet.put(117, (byte) 0x02);  // VECTOR_DMP_SET_PROPERTY
+    packet.put(118, (byte) 0xa1);  // Address and data type.
+    packet.putShort(119, (short) 0);  // First property address.
+    packet.putShort(121, (short) 1);  // Address increment.
+    packet.putShort(123, (short) (dataLength + 1));  // Property value count, including start code.
+    packet.put(125, (byte) 0);  // DMX start code.
+  }
+
+  public int syncLength() {
+    return E131_SYNC_LENGTH;
+  }
+
+  public void writeSync(ByteBuffer packet) {
+    writeRootLayer(packet, E131_SYNC_LENGTH, 0x00000008);  // VECTOR_ROOT_E131_EXTENDED
+    putFlagsAndLength(packet, 38, E131_SYNC_LENGTH - 38);
+    packet.putInt(40, 0x00000001);  // VECTOR_E131_EXTENDED_SYNCHRONIZATION
+    packet.put(SYNC_SEQUENCE_OFFSET, (byte) 0);
+    packet.putShort(45, (short) syncUniverse);
+    packet.putShort(47, (short) 0);  // Reserved.
+  }
+
+  public void beforeSend(ByteBuffer packet, boolean sync) {
+    int offset = sync ? SYNC_SEQUENCE_OFFSET : SEQUENCE_OFFSET;
+    packet.put(offset, (byte) (packet.get(offset) + 1));
+  }
+
+  static void writeRootLayer(ByteBuffer packet, int length, int vector) {
+    packet.putShort(0, (short) 0x0010);  // Preamble size.
+    packet.putShort(2, (short) 0);  // Postamble size.
+    byte[] id = {'A', 'S', 'C', '-', 'E', '1', '.', '1', '7', 0, 0, 0};
+    for (int i = 0; i < id.length; i++) {
+      packet.put(4 + i, id[i]);
+    }
+    putFlagsAndLength(packet, 16, length - 16);
+    packet.putInt(18, vector);
+    packet.putLong(22, CID.getMostSignificantBits());
+    packet.putLong(30, CID.getLeastSignificantBits());
+  }
+
+  static void putFlagsAndLength(ByteBuffer packet, int offset, int length) {
+    packet.putShort(offset, (short) (0x7000 | (length & 0x0fff)));
+  }
+}
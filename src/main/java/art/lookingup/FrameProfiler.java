@@ -0,0 +1,201 @@
+package art.lookingup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * Frame time histograms for patterns, effects and output, one per named component.  Recording a span
+ * costs two nanoTime calls and two atomic adds, and is safe from any thread without locking.
+ * <p>
+ * Histograms only ever count up.  A reader takes a {@link Snapshot} and subtracts the one it took
+ * last time, so the UI and the periodic log each see their own window.</p>
+ */
+public class FrameProfiler {
+  private static final Logger logger = Logger.getLogger(FrameProfiler.class.getName());
+
+  private static final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+  private static ScheduledExecutorService dumper;
+
+  /** The histogram for a component, created on first use.  Keep the result rather than looking it up per span. */
+  public static Histogram histogram(String name) {
+    return histograms.computeIfAbsent(name, Histogram::new);
+  }
+
+  public static List<Histogram> histograms() {
+    return new ArrayList<Histogram>(histograms.values());
+  }
+
+  /**
+   * Logs the spans recorded in every interval, busiest component first.
+   */
+  public static synchronized void startLogging(long intervalSecs) {
+    if (dumper != null) {
+      return;
+    }
+    dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "Frame profiler");
+      t.setDaemon(true);
+      return t;
+    });
+    final Map<Histogram, Snapshot> previous = new HashMap<Histogram, Snapshot>();
+    dumper.scheduleAtFixedRate(() -> {
+      List<Snapshot> window = window(previous);
+      if (window.isEmpty()) {
+        return;
+      }
+      StringBuilder sb = new StringBuilder("Frame times over the last " + intervalSecs + "s, ms:");
+      for (Snapshot s : window) {
+        sb.append(String.format("%n  %-32s n=%-7d p50=%.2f p95=%.2f p99=%.2f max=%.2f",
+            s.name, s.count(), s.percentileMs(0.50), s.percentileMs(0.95), s.percentileMs(0.99), s.maxMs()));
+      }
+      logger.info(sb.toString());
+    }, intervalSecs, intervalSecs, TimeUnit.SECONDS);
+  }
+
+  /**
+   * The spans recorded since the last call with the same map, for components that recorded any,
+   * sorted by total time descending.  Updates previous.
+   */
+  public static List<Snapshot> window(Map<Histogram, Snapshot> previous) {
+    List<Snapshot> window = new ArrayList<Snapshot>();
+    for (Histogram h : histograms()) {
+      Snapshot now = h.snapshot();
+      Snapshot delta = now.since(previous.get(h));
+      previous.put(h, now);
+      if (delta.count() > 0) {
+        window.add(delta);
+      }
+    }
+    window.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+    return window;
+  }
+
+  /**
+   * Log-linear histogram of nanosecond spans: eight buckets per power of two, so percentiles are
+   * within about 6% of the true value.
+   */
+  public static class Histogram {
+    static final int SUB_BITS = 3;
+    static final int SUB = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    public final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+
+    Histogram(String name) {
+      this.name = name;
+    }
+
+    public void record(long nanos) {
+      if (nanos < 0) {
+        nanos = 0;
+      }
+      counts.incrementAndGet(bucket(nanos));
+      total.addAndGet(nanos);
+    }
+
+    /** Records the time from start, a System.nanoTime(), to now. */
+    public void recordSince(long start) {
+      record(System.nanoTime() - start);
+    }
+
+    public Snapshot snapshot() {
+      long[] copy = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        copy[i] = counts.get(i);
+      }
+      return new Snapshot(name, copy, total.get());
+    }
+
+    static int bucket(long nanos) {
+      if (nanos < SUB) {
+        return (int) nanos;
+      }
+      int exp = 63 - Long.numberOfLeadingZeros(nanos);
+      int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB - 1);
+      return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /** The middle of a bucket's range, in nanoseconds. */
+    static long value(int bucket) {
+      if (bucket < SUB) {
+        return bucket;
+      }
+      int shift = bucket / SUB - 1;
+      long lower = (long) (SUB + bucket % SUB) << shift;
+      return lower + ((1L << shift) >> 1);
+    }
+  }
+
+  /** Counts of one histogram at one time, or the difference between two. */
+  public static class Snapshot {
+    public final String name;
+    final long[] counts;
+    final long totalNanos;
+    private final long count;
+
+    Snapshot(String name, long[] counts, long totalNanos) {
+      this.name = name;
+      this.counts = counts;
+      this.totalNanos = totalNanos;
+      long n = 0;
+      for (long c : counts) {
+        n += c;
+      }
+      this.count = n;
+    }
+
+    Snapshot since(Snapshot earlier) {
+      if (earlier == null) {
+        return this;
+      }
+      long[] delta = new long[counts.length];
+      for (int i = 0; i < counts.length; i++) {
+        delta[i] = counts[i] - earlier.counts[i];
+      }
+      return new Snapshot(name, delta, totalNanos - earlier.totalNanos);
+    }
+
+    public long count() {
+      return count;
+    }
+
+    public double totalMs() {
+      return totalNanos / 1e6;
+    }
+
+    public double percentileMs(double q) {
+      long rank = (long) Math.ceil(q * count);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && counts[i] > 0) {
+          return Histogram.value(i) / 1e6;
+        }
+      }
+      return 0.0;
+    }
+
+    /** The largest span, to the resolution of its bucket. */
+    public double maxMs() {
+      for (int i = counts.length - 1; i >= 0; i--) {
+        if (counts[i] > 0) {
+          return Histogram.value(i) / 1e6;
+        }
+      }
+      return 0.0;
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package art.lookingup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the universe payloads sent by a {@link UniverseOutput} to a series of memory mapped, append
+ * only segment files.  Replay them with {@link FrameReplay}.
+ * <p>
+ * Each segment starts with a header: magic, version, capture start time in epoch ms, segment number,
+ * universe count and then the universe number and payload length of every universe.  It is followed by
+ * frame records: record length (0 marks the end of the segment), nanoseconds since the capture started,
+ * the number of universes that changed since the previous frame and, for each of them, the universe
+ * index and its payload.  The first frame of every segment holds all universes so segments can be
+ * decoded on their own.</p>
+ * <p>
+ * {@link #record(ByteBuffer[], int[], long)} only copies bytes into the mapped segment.  The next segment
+ * is mapped and the finished one truncated and closed on a background thread.</p>
+ */
+public class FrameRecorder {
+  private static final Logger logger = Logger.getLogger(FrameRecorder.class.getName());
+
+  public static final int MAGIC = 0x43444350;  // "CDCP"
+  public static final int VERSION = 1;
+  public static final String SUFFIX = ".cdcap";
+  public static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+
+  public final String prefix;
+  private final int[] universes;
+  private final int[] payloadLengths;
+  private final long startMillis = System.currentTimeMillis();
+  private long startNanos = -1;
+  private final int maxFrameLength;
+
+  // Previous payload of each universe, for the delta against the previous frame.
+  private final byte[][] previous;
+  private boolean fullFrame = true;
+
+  private final ExecutorService segmentThread = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "FrameRecorder segments");
+    t.setDaemon(true);
+    return t;
+  });
+  private int segmentNum = 0;
+  private Segment segment;
+  private Future<Segment> nextSegment;
+  private long framesRecorded = 0;
+  private long framesLost = 0;
+  private boolean closed = false;
+
+  private static class Segment {
+    RandomAccessFile file;
+    MappedByteBuffer buffer;
+    String filename;
+  }
+
+  /**
+   * @param prefix Segment files are named prefix-yyyyMMdd-HHmmss-NNN.cdcap.
+   */
+  public FrameRecorder(String prefix, UniverseMap map) throws IOException {
+    this.prefix = prefix + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(startMillis));
+    universes = map.universes.clone();
+    payloadLengths = new int[map.size()];
+    previous = new byte[map.size()][];
+    int frameLength = 4 + 8 + 2;
+    for (int u = 0; u < map.size(); u++) {
+      payloadLengths[u] = map.pointCount(u) * 3;
+      previous[u] = new byte[payloadLengths[u]];
+      frameLength += 2 + payloadLengths[u];
+    }
+    maxFrameLength = frameLength;
+    segment = openSegment(segmentNum);
+    final int num = segmentNum + 1;
+    nextSegment = segmentThread.submit(() -> openSegment(num));
+    logger.info("Recording output to " + segment.filename);
+  }
+
+  private Segment openSegment(int num) throws IOException {
+    Segment s = new Segment();
+    s.filename = String.format("%s-%03d%s", prefix, num, SUFFIX);
+    s.file = new RandomAccessFile(s.filename, "rw");
+    s.buffer = s.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+    s.buffer.putInt(MAGIC);
+    s.buffer.putInt(VERSION);
+    s.buffer.putLong(startMillis);
+    s.buffer.putInt(num);
+    s.buffer.putInt(universes.length);
+    for (int u = 0; u < universes.length; u++) {
+      s.buffer.putInt(universes[u]);
+      s.buffer.putInt(payloadLengths[u]);
+    }
+    return s;
+  }
+
+  private static void closeSegment(Segment s) {
+    try {
+      int length = s.buffer.position();
+      s.buffer.force();
+      s.file.getChannel().truncate(length);
+      s.file.close();
+    } catch (IOException ioex) {
+      logger.log(Level.WARNING, "Error closing capture segment " + s.filename, ioex);
+    }
+  }
+
+  /**
+   * Appends a frame.  Called from the thread that transmits the packets, before they are sent.
+   *
+   * @param packets The packets of every universe, in map order.
+   * @param payloadOffsets The offset of the payload in each packet.
+   * @param nanos The System.nanoTime() the frame is sent at.
+   */
+  public synchronized void record(ByteBuffer[] packets, int[] payloadOffsets, long nanos) {
+    if (closed) return;
+    if (segment.buffer.remaining() < maxFrameLength + 4 && !nextSegment()) {
+      framesLost++;
+      return;
+    }
+    if (startNanos < 0) startNanos = nanos;
+    MappedByteBuffer buffer = segment.buffer;
+    int recordStart = buffer.position();
+    buffer.position(recordStart + 4);
+    buffer.putLong(nanos - startNanos);
+    int countPos = buffer.position();
+    buffer.position(countPos + 2);
+    int changedCount = 0;
+    for (int u = 0; u < packets.length; u++) {
+      ByteBuffer packet = packets[u];
+      int headerLength = payloadOffsets[u];
+      byte[] prev = previous[u];
+      boolean changed = fullFrame;
+      for (int i = 0; i < prev.length; i++) {
+        byte b = packet.get(headerLength + i);
+        if (b != prev[i]) {
+          prev[i] = b;
+          changed = true;
+        }
+      }
+      if (changed) {
+        buffer.putShort((short) u);
+        buffer.put(prev);
+        changedCount++;
+      }
+    }
+    buffer.putShort(countPos, (short) changedCount);
+    buffer.putInt(recordStart, buffer.position() - recordStart);
+    fullFrame = false;
+    framesRecorded++;
+  }
+
+  private boolean nextSegment() {
+    Segment next;
+    try {
+      next = nextSegment.get();
+    } catch (InterruptedException | ExecutionException ex) {
+      logger.log(Level.SEVERE, "Unable to open capture segment, recording stopped", ex);
+      closed = true;
+      return false;
+    }
+    final Segment finished = segment;
+    segment = next;
+    fullFrame = true;
+    segmentThread.execute(() -> closeSegment(finished));
+    final int num = ++segmentNum + 1;
+    nextSegment = segmentThread.submit(() -> openSegment(num));
+    return true;
+  }
+
+  public synchronized void close() {
+    if (closed) return;
+    closed = true;
+    closeSegment(segment);
+    // The prepared next segment was never written to.
+    final Future<Segment> unused = nextSegment;
+    segmentThread.execute(() -> {
+      try {
+        Segment s = unused.get();
+        s.file.close();
+        new File(s.filename).delete();
+      } catch (Exception ex) {
+        logger.log(Level.WARNING, "Error removing unused capture segment", ex);
+      }
+    });
+    segmentThread.shutdown();
+    logger.info("Recorded " + framesRecorded + " frames to " + prefix + "-*" + SUFFIX +
+        (framesLost > 0 ? ", lost " + framesLost : ""));
+  }
+}
@@ -0,0 +1,132 @@
+package art.lookingup;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Replays a capture written by {@link FrameRecorder} through a {@link UniverseOutput}, so the packets
+ * are built and sent exactly as they are by ConeDown.
+ * <pre>
+ *   java -cp conedown-1.0.0-jar-with-dependencies.jar art.lookingup.FrameReplay [-speed 2.0] [-sacn]
+ *       [-port 6454] [-nosync] ip capture-pixlite-20191001-203000-*.cdcap
+ * </pre>
+ * Segments are played in the order given.  A speed of 0 sends frames as fast as possible.
+ */
+public class FrameReplay {
+  private static final Logger logger = Logger.getLogger(FrameReplay.class.getName());
+
+  public static void main(String[] args) throws IOException {
+    double speed = 1.0;
+    boolean sacn = false;
+    boolean sync = true;
+    int port = ArtNetFormat.ARTNET_PORT;
+    int argNum = 0;
+    while (argNum < args.length && args[argNum].startsWith("-")) {
+      String opt = args[argNum++];
+      if ("-speed".equals(opt)) {
+        speed = Double.parseDouble(args[argNum++]);
+      } else if ("-port".equals(opt)) {
+        port = Integer.parseInt(args[argNum++]);
+      } else if ("-sacn".equals(opt)) {
+        sacn = true;
+      } else if ("-nosync".equals(opt)) {
+        sync = false;
+      } else {
+        usage();
+        return;
+      }
+    }
+    if (args.length - argNum < 2) {
+      usage();
+      return;
+    }
+    String ipAddress = args[argNum++];
+    List<String> segments = new ArrayList<String>(Arrays.asList(args).subList(argNum, args.length));
+
+    UniverseOutput output = null;
+    byte[][] payloads = null;
+    long replayStart = System.nanoTime();
+    // Capture time of the first frame replayed, so a later segment starts sending right away.
+    long firstFrameNanos = -1;
+    long frames = 0;
+    for (String filename : segments) {
+      try (RandomAccessFile file = new RandomAccessFile(filename, "r"); FileChannel channel = file.getChannel()) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.getInt() != FrameRecorder.MAGIC || buffer.getInt() != FrameRecorder.VERSION) {
+          logger.severe("Not a capture file: " + filename);
+          return;
+        }
+        buffer.getLong();  // Capture start, epoch ms.
+        buffer.getInt();  // Segment number.
+        int numUniverses = buffer.getInt();
+        UniverseMap map = new UniverseMap();
+        for (int u = 0; u < numUniverses; u++) {
+          int universe = buffer.getInt();
+          int payloadLength = buffer.getInt();
+          map.addUniverse(universe, new int[payloadLength / 3]);
+        }
+        map.compile();
+        if (output == null) {
+          output = createOutput(map, ipAddress, port, sacn, sync);
+          payloads = new byte[numUniverses][];
+          for (int u = 0; u < numUniverses; u++) {
+            payloads[u] = new byte[map.pointCount(u) * 3];
+          }
+          logger.info("Replaying " + numUniverses + " universes to " + ipAddress + " at speed " + speed);
+        } else if (map.size() != payloads.length) {
+          logger.severe("Segment " + filename + " is from a different capture");
+          return;
+        }
+
+        while (buffer.remaining() >= 4) {
+          int recordStart = buffer.position();
+          int recordLength = buffer.getInt();
+          if (recordLength == 0) break;
+          long frameNanos = buffer.getLong();
+          int changedCount = buffer.getShort();
+          for (int i = 0; i < changedCount; i++) {
+            int u = buffer.getShort();
+            buffer.get(payloads[u]);
+          }
+          buffer.position(recordStart + recordLength);
+
+          if (firstFrameNanos < 0) {
+            firstFrameNanos = frameNanos;
+          }
+          if (speed > 0) {
+            long due = replayStart + (long) ((frameNanos - firstFrameNanos) / speed);
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+              LockSupport.parkNanos(wait);
+            }
+          }
+          output.transmitPayloads(payloads);
+          frames++;
+        }
+      }
+    }
+    logger.info("Replayed " + frames + " frames in " + (System.nanoTime() - replayStart) / 1000000 + "ms");
+  }
+
+  private static UniverseOutput createOutput(UniverseMap map, String ipAddress, int port, boolean sacn,
+                                             boolean sync) throws IOException {
+    if (!sacn) {
+      return new UniverseOutput(null, map, ipAddress, port, sync);
+    }
+    InetSocketAddress address = new InetSocketAddress(ipAddress, E131Format.E131_PORT);
+    return new UniverseOutput(null, map, new E131Format(E131Format.DEFAULT_PRIORITY, 0),
+        UniverseOutput.sameAddress(map, address), null);
+  }
+
+  private static void usage() {
+    System.err.println("usage: FrameReplay [-speed 1.0] [-sacn] [-port 6454] [-nosync] ip segment.cdcap...");
+  }
+}
@@ -1,5 +1,9 @@
 package art.lookingup;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class Gamma {
   private static float defaultGamma = 1.8f;
   private static float defaultGammaRed = 1.8f;
@@ -11,11 +15,120 @@ public class Gamma {
   static final byte[][] GAMMA_LUT_GREEN = new byte[256][256];
   static final byte[][] GAMMA_LUT_BLUE = new byte[256][256];
 
+  /**
+   * The white point that leaves colors unscaled.  Other white points scale each channel by its color
+   * temperature relative to this one's, so the default changes nothing.
+   */
+  public static final float DEFAULT_WHITE_POINT = 6600f;
+
+  /**
+   * Fused output correction tables indexed [channel][brightness][in] with channels in RGB order.  Each
+   * entry combines the per-channel gamma, the white point scale from the color temperature and the
+   * brightness, so the output stage does one table load per channel.  The whole table is replaced when
+   * the settings change, readers should grab the reference once per frame.
+   * <p>
+   * Unlike LXOutput's own table, this applies the GAMMA knobs, which default to 1.8 and darken the
+   * midtones compared to the linear output used before.  With all three at 1.0 and the default white
+   * point the table is exactly LXOutput's linear one.</p>
+   */
+  public static volatile byte[][][] OUTPUT_LUT;
+
+  /**
+   * The same tables as {@link #OUTPUT_LUT} in 8.8 fixed point, for temporal dithering.  Values top out
+   * at 255 << 8 so that adding an 8 bit error term never overflows a channel.
+   */
+  public static volatile char[][][] OUTPUT_LUT16;
+
+  private static volatile float requestedGammaRed = defaultGammaRed;
+  private static volatile float requestedGammaGreen = defaultGammaGreen;
+  private static volatile float requestedGammaBlue = defaultGammaBlue;
+  private static volatile float requestedWhitePoint = DEFAULT_WHITE_POINT;
+  private static final AtomicBoolean rebuildPending = new AtomicBoolean(false);
+  private static final ExecutorService lutBuilder = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "Gamma LUT builder");
+    t.setDaemon(true);
+    return t;
+  });
+
   static {
     buildGammaLUT(defaultGamma);
     buildRedGammaLUT(defaultGammaRed);
     buildGreenGammaLUT(defaultGammaGreen);
     buildBlueGammaLUT(defaultGammaBlue);
+    setOutputLUT(buildOutputLUT16(defaultGammaRed, defaultGammaGreen, defaultGammaBlue, DEFAULT_WHITE_POINT));
+  }
+
+  /**
+   * Requests a rebuild of {@link #OUTPUT_LUT} on a background thread.  Requests that arrive while a
+   * rebuild is queued are coalesced into it.
+   */
+  public static void requestOutputLUT(float gammaRed, float gammaGreen, float gammaBlue, float whitePointK) {
+    requestedGammaRed = gammaRed;
+    requestedGammaGreen = gammaGreen;
+    requestedGammaBlue = gammaBlue;
+    requestedWhitePoint = whitePointK;
+    if (rebuildPending.compareAndSet(false, true)) {
+      lutBuilder.execute(() -> {
+        rebuildPending.set(false);
+        setOutputLUT(buildOutputLUT16(requestedGammaRed, requestedGammaGreen, requestedGammaBlue, requestedWhitePoint));
+      });
+    }
+  }
+
+  private static void setOutputLUT(char[][][] lut16) {
+    byte[][][] lut = new byte[3][256][256];
+    for (int c = 0; c < 3; ++c) {
+      for (int b = 0; b < 256; ++b) {
+        for (int in = 0; in < 256; ++in) {
+          lut[c][b][in] = (byte) ((lut16[c][b][in] + 0x80) >> 8);
+        }
+      }
+    }
+    OUTPUT_LUT16 = lut16;
+    OUTPUT_LUT = lut;
+  }
+
+  public static char[][][] buildOutputLUT16(float gammaRed, float gammaGreen, float gammaBlue, float whitePointK) {
+    float[] scales = whitePointScales(whitePointK);
+    float[] gammas = {gammaRed, gammaGreen, gammaBlue};
+    char[][][] lut = new char[3][256][256];
+    for (int c = 0; c < 3; ++c) {
+      float scale = scales[c];
+      boolean linear = gammas[c] == 1.f && scale == 1.f;
+      for (int b = 0; b < 256; ++b) {
+        // LXOutput's linear table, so that the identity settings reproduce its output exactly.
+        int linearBrightness = b + (b > 127 ? 1 : 0);
+        for (int in = 0; in < 256; ++in) {
+          if (linear) {
+            lut[c][b][in] = (char) (((in * linearBrightness) >> 8) << 8);
+          } else {
+            lut[c][b][in] = (char) Math.round(Math.pow(in * b * scale / 65025.f, gammas[c]) * (255 << 8));
+          }
+        }
+      }
+    }
+    return lut;
+  }
+
+  /**
+   * Per-channel scales for a white point, relative to {@link #DEFAULT_WHITE_POINT} and normalized so
+   * the largest is 1.
+   */
+  static float[] whitePointScales(float whitePointK) {
+    int[] white = new int[3];
+    int[] reference = new int[3];
+    ColorTemp.convertKToRGB(whitePointK, white);
+    ColorTemp.convertKToRGB(DEFAULT_WHITE_POINT, reference);
+    float[] scales = new float[3];
+    float max = 0.f;
+    for (int c = 0; c < 3; ++c) {
+      scales[c] = (float) white[c] / reference[c];
+      max = Math.max(max, scales[c]);
+    }
+    for (int c = 0; c < 3; ++c) {
+      scales[c] /= max;
+    }
+    return scales;
   }
 
   public static void buildGammaLUT(float gamma) {
@@ -0,0 +1,243 @@
+package art.lookingup;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import processing.core.PConstants;
+import processing.core.PGraphics;
+import processing.core.PImage;
+import processing.core.PStyle;
+
+/**
+ * Offscreen PGraphics and PImage buffers shared by all patterns, keyed by size, renderer and
+ * smoothing.  Patterns resize their buffers whenever a render target or super-sampling knob moves;
+ * handing the old buffer back here lets the next request of that size reuse it instead of
+ * allocating a new image or OpenGL surface.
+ * <p>
+ * A buffer is counted from {@link #acquire(int, int, String)} until the matching
+ * {@link #release(PImage)}, with {@link #retain(PImage)} for additional holders.  When the count
+ * drops to zero the buffer waits in the pool, and is disposed after {@link #IDLE_MS} unused or once
+ * more than {@link #MAX_FREE_PER_KEY} of its kind are waiting.  Reused graphics are cleared to
+ * transparent with the default style, as if newly created.</p>
+ * <p>
+ * Buffers may be released from the draw workers, but OpenGL surfaces are only disposed on the GL
+ * thread: one released elsewhere waits until ConeDown's draw() calls {@link #disposePending()}.</p>
+ */
+public class GraphicsPool {
+  private static final Logger logger = Logger.getLogger(GraphicsPool.class.getName());
+
+  // Smoothing as the renderer creates it.
+  public static final int DEFAULT_SMOOTH = -1;
+  static final long IDLE_MS = 30000;
+  static final int MAX_FREE_PER_KEY = 4;
+
+  private static class Entry {
+    final String key;
+    final PImage image;
+    int refs;
+    long releasedAt;
+
+    Entry(String key, PImage image) {
+      this.key = key;
+      this.image = image;
+    }
+  }
+
+  private static final Map<String, ArrayDeque<Entry>> free = new HashMap<String, ArrayDeque<Entry>>();
+  private static final Map<PImage, Entry> leased = new IdentityHashMap<PImage, Entry>();
+  // The style of a new graphics, per renderer, restored on reuse.
+  private static final Map<String, PStyle> defaultStyles = new HashMap<String, PStyle>();
+  // GL graphics dropped from the pool off the GL thread, to dispose on it.
+  private static final List<PGraphics> pendingDispose = new ArrayList<PGraphics>();
+  private static Thread glThread;
+
+  public static PGraphics acquire(int width, int height) {
+    return acquire(width, height, PConstants.JAVA2D, DEFAULT_SMOOTH);
+  }
+
+  public static PGraphics acquire(int width, int height, String renderer) {
+    return acquire(width, height, renderer, DEFAULT_SMOOTH);
+  }
+
+  /**
+   * @param renderer JAVA2D, P2D or P3D.  Null or "" is JAVA2D.
+   * @param smooth The smoothing level to create it with, 0 for noSmooth(), or DEFAULT_SMOOTH.
+   */
+  public static synchronized PGraphics acquire(int width, int height, String renderer, int smooth) {
+    if (renderer == null || renderer.isEmpty()) {
+      renderer = PConstants.JAVA2D;
+    }
+    String key = renderer + " " + smooth + " " + width + "x" + height;
+    Entry entry = take(key);
+    if (entry == null) {
+      PGraphics pg = ConeDown.pApplet.createGraphics(width, height, renderer);
+      if (smooth == 0) {
+        pg.noSmooth();
+      } else if (smooth > 0) {
+        pg.smooth(smooth);
+      }
+      entry = new Entry(key, pg);
+    } else {
+      PGraphics pg = (PGraphics) entry.image;
+      pg.beginDraw();
+      pg.style(defaultStyle(renderer));
+      pg.clear();
+      pg.endDraw();
+    }
+    entry.refs = 1;
+    leased.put(entry.image, entry);
+    return (PGraphics) entry.image;
+  }
+
+  /** A PImage with all pixels 0. */
+  public static synchronized PImage acquireImage(int width, int height, int format) {
+    String key = "image " + format + " " + width + "x" + height;
+    Entry entry = take(key);
+    if (entry == null) {
+      entry = new Entry(key, new PImage(width, height, format));
+    } else {
+      Arrays.fill(entry.image.pixels, 0);
+      entry.image.updatePixels();
+    }
+    entry.refs = 1;
+    leased.put(entry.image, entry);
+    return entry.image;
+  }
+
+  /** Adds a holder of a buffer acquired from the pool. */
+  public static synchronized void retain(PImage image) {
+    Entry entry = leased.get(image);
+    if (entry == null) {
+      throw new IllegalArgumentException("Not acquired from the pool");
+    }
+    entry.refs++;
+  }
+
+  /**
+   * Drops a holder of a buffer.  Once the last one is gone the buffer returns to the pool.  A
+   * graphics that was not acquired from the pool is disposed, so callers may release whatever buffer
+   * they hold.  Null is ignored.
+   *
+   * @throws IllegalStateException If the buffer is already back in the pool.
+   */
+  public static synchronized void release(PImage image) {
+    if (image == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    Entry entry = leased.get(image);
+    if (entry == null) {
+      if (isFree(image)) {
+        throw new IllegalStateException("Buffer released more often than acquired");
+      }
+      dispose(image);
+    } else if (--entry.refs == 0) {
+      leased.remove(image);
+      entry.releasedAt = now;
+      ArrayDeque<Entry> entries = free.get(entry.key);
+      if (entries == null) {
+        entries = new ArrayDeque<Entry>();
+        free.put(entry.key, entries);
+      }
+      entries.addFirst(entry);
+      if (entries.size() > MAX_FREE_PER_KEY) {
+        dispose(entries.removeLast());
+      }
+    }
+    evictIdle(now);
+  }
+
+  /** Number of buffers currently waiting in the pool. */
+  public static synchronized int freeCount() {
+    int count = 0;
+    for (ArrayDeque<Entry> entries : free.values()) {
+      count += entries.size();
+    }
+    return count;
+  }
+
+  /**
+   * Disposes the GL graphics released from other threads.  Called from the GL thread once per frame.
+   */
+  public static void disposePending() {
+    List<PGraphics> batch;
+    synchronized (GraphicsPool.class) {
+      glThread = Thread.currentThread();
+      if (pendingDispose.isEmpty()) {
+        return;
+      }
+      batch = new ArrayList<PGraphics>(pendingDispose);
+      pendingDispose.clear();
+    }
+    for (PGraphics pg : batch) {
+      pg.dispose();
+    }
+  }
+
+  private static boolean isFree(PImage image) {
+    for (ArrayDeque<Entry> entries : free.values()) {
+      for (Entry entry : entries) {
+        if (entry.image == image) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // Most recently released first, so the oldest ones age out.
+  private static Entry take(String key) {
+    evictIdle(System.currentTimeMillis());
+    ArrayDeque<Entry> entries = free.get(key);
+    return entries == null ? null : entries.pollFirst();
+  }
+
+  private static void evictIdle(long now) {
+    for (Iterator<ArrayDeque<Entry>> it = free.values().iterator(); it.hasNext(); ) {
+      ArrayDeque<Entry> entries = it.next();
+      while (!entries.isEmpty() && now - entries.peekLast().releasedAt > IDLE_MS) {
+        dispose(entries.removeLast());
+      }
+      if (entries.isEmpty()) {
+        it.remove();
+      }
+    }
+  }
+
+  private static void dispose(Entry entry) {
+    logger.fine("Disposing pooled " + entry.key);
+    dispose(entry.image);
+  }
+
+  private static void dispose(PImage image) {
+    if (!(image instanceof PGraphics)) {
+      return;
+    }
+    PGraphics pg = (PGraphics) image;
+    if (pg.isGL() && Thread.currentThread() != glThread) {
+      pendingDispose.add(pg);
+    } else {
+      pg.dispose();
+    }
+  }
+
+  private static PStyle defaultStyle(String renderer) {
+    PStyle style = defaultStyles.get(renderer);
+    if (style == null) {
+      PGraphics pg = ConeDown.pApplet.createGraphics(1, 1, renderer);
+      pg.beginDraw();
+      style = pg.getStyle();
+      pg.endDraw();
+      dispose(pg);
+      defaultStyles.put(renderer, style);
+    }
+    return style;
+  }
+}
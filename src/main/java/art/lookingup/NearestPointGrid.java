@@ -0,0 +1,183 @@
+package art.lookingup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Uniform bucket grid for exact nearest-point queries over the projected
+ * model points.  Used to build the projection lookup tables, where every
+ * pixel of the (super-sampled) image needs its nearest point.
+ *
+ * Points are bucketed into square cells and a query walks rings of cells
+ * outward from its own cell until no unvisited cell can hold a closer
+ * point.  Equidistant points resolve to the lowest point index so the
+ * tables are the same on every run.
+ */
+final class NearestPointGrid {
+    // Rows per fork-join task when filling a whole table.
+    static final int ROWS_PER_TASK = 8;
+
+    final float[] xs;
+    final float[] ys;
+    final int[] order;
+
+    final float cellSize;
+    final float originX;
+    final float originY;
+    final int cols;
+    final int rows;
+    final int[] cellStart;
+    final int[] cellItems;
+
+    /** Selects which pixels of a table get a nearest point. */
+    interface Filter {
+	boolean include(int x, int y);
+    }
+
+    /**
+     * @param xs, ys Point coordinates, one entry per slot.
+     * @param order  Tie-break key per slot, lower wins.
+     * @param width, height The query domain, covered in addition to the points.
+     * @param cellSize Cell edge, about the spacing between points.
+     */
+    NearestPointGrid(float[] xs, float[] ys, int[] order, int width, int height, float cellSize) {
+	this.xs = xs;
+	this.ys = ys;
+	this.order = order;
+	this.cellSize = cellSize;
+
+	float minX = 0, minY = 0, maxX = width, maxY = height;
+	for (int s = 0; s < xs.length; s++) {
+	    minX = Math.min(minX, xs[s]);
+	    minY = Math.min(minY, ys[s]);
+	    maxX = Math.max(maxX, xs[s]);
+	    maxY = Math.max(maxY, ys[s]);
+	}
+	this.originX = minX;
+	this.originY = minY;
+	this.cols = (int)((maxX - minX) / cellSize) + 1;
+	this.rows = (int)((maxY - minY) / cellSize) + 1;
+
+	// Bucket the slots, compressed-row style: the slots of cell c are
+	// cellItems[cellStart[c]] through cellItems[cellStart[c + 1] - 1].
+	int[] cellOf = new int[xs.length];
+	this.cellStart = new int[cols * rows + 1];
+	for (int s = 0; s < xs.length; s++) {
+	    cellOf[s] = cellRow(ys[s]) * cols + cellCol(xs[s]);
+	    cellStart[cellOf[s] + 1]++;
+	}
+	for (int c = 0; c < cols * rows; c++) {
+	    cellStart[c + 1] += cellStart[c];
+	}
+	int[] fill = new int[cols * rows];
+	this.cellItems = new int[xs.length];
+	for (int s = 0; s < xs.length; s++) {
+	    cellItems[cellStart[cellOf[s]] + fill[cellOf[s]]++] = s;
+	}
+    }
+
+    int cellCol(float x) {
+	return Math.max(0, Math.min(cols - 1, (int)((x - originX) / cellSize)));
+    }
+
+    int cellRow(float y) {
+	return Math.max(0, Math.min(rows - 1, (int)((y - originY) / cellSize)));
+    }
+
+    /**
+     * Returns the slot nearest to (x, y) that is strictly closer than
+     * maxDistance, or -1 if there is none.
+     */
+    int nearest(float x, float y, double maxDistance) {
+	int cx = cellCol(x);
+	int cy = cellRow(y);
+	int best = -1;
+	double bestD2 = maxDistance * maxDistance;
+
+	for (int r = 0; ; r++) {
+	    int x0 = cx - r, x1 = cx + r, y0 = cy - r, y1 = cy + r;
+
+	    for (int gy = Math.max(y0, 0); gy <= Math.min(y1, rows - 1); gy++) {
+		boolean edgeRow = gy == y0 || gy == y1;
+		int step = edgeRow ? 1 : x1 - x0;
+		for (int gx = x0; gx <= x1; gx += Math.max(step, 1)) {
+		    if (gx < 0 || gx >= cols) {
+			continue;
+		    }
+		    int c = gy * cols + gx;
+		    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+			int s = cellItems[k];
+			double dx = xs[s] - x;
+			double dy = ys[s] - y;
+			double d2 = dx * dx + dy * dy;
+			if (d2 < bestD2 || (d2 == bestD2 && best >= 0 && order[s] < order[best])) {
+			    best = s;
+			    bestD2 = d2;
+			}
+		    }
+		}
+	    }
+
+	    if (x0 <= 0 && y0 <= 0 && x1 >= cols - 1 && y1 >= rows - 1) {
+		return best;
+	    }
+	    // Anything outside the rings visited so far is at least this far.
+	    double bound = Math.min(Math.min(x - (originX + x0 * cellSize),
+					     originX + (x1 + 1) * cellSize - x),
+				    Math.min(y - (originY + y0 * cellSize),
+					     originY + (y1 + 1) * cellSize - y));
+	    if (bound > 0 && bestD2 < bound * bound) {
+		return best;
+	    }
+	}
+    }
+
+    /**
+     * Finds the nearest slot for every included pixel of a width x height
+     * table, in parallel over bands of rows.
+     *
+     * @return The slot per pixel, indexed y * width + x, -1 where excluded
+     * or where nothing is within maxDistance.
+     */
+    int[] nearestTable(int width, int height, double maxDistance, Filter filter) {
+	int[] table = new int[width * height];
+	ForkJoinPool.commonPool().invoke(new RowBand(table, width, 0, height, maxDistance, filter));
+	return table;
+    }
+
+    class RowBand extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	final int[] table;
+	final int width;
+	final int from;
+	final int to;
+	final double maxDistance;
+	final Filter filter;
+
+	RowBand(int[] table, int width, int from, int to, double maxDistance, Filter filter) {
+	    this.table = table;
+	    this.width = width;
+	    this.from = from;
+	    this.to = to;
+	    this.maxDistance = maxDistance;
+	    this.filter = filter;
+	}
+
+	@Override
+	protected void compute() {
+	    if (to - from > ROWS_PER_TASK) {
+		int mid = (from + to) >>> 1;
+		invokeAll(new RowBand(table, width, from, mid, maxDistance, filter),
+			  new RowBand(table, width, mid, to, maxDistance, filter));
+		return;
+	    }
+	    for (int y = from; y < to; y++) {
+		for (int x = 0; x < width; x++) {
+		    table[y * width + x] = (filter == null || filter.include(x, y)) ?
+			nearest(x, y, maxDistance) : -1;
+		}
+	    }
+	}
+    }
+}
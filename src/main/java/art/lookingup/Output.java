@@ -4,13 +4,13 @@ import art.lookingup.ui.UIPixliteConfig;
 import heronarts.lx.LX;
 import heronarts.lx.model.LXPoint;
 import heronarts.lx.output.ArtNetDatagram;
-import heronarts.lx.output.ArtSyncDatagram;
 import heronarts.lx.output.LXDatagramOutput;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.*;
@@ -20,12 +20,14 @@ import java.util.logging.Logger;
 import static art.lookingup.ConeDownModel.panelLayers;
 
 /**
- * Handles output from our 'colors' buffer to our DMX lights.  Currently using E1.31.
+ * Handles output from our 'colors' buffer to our DMX lights.  The Pixlite can be driven with either ArtNet
+ * or E1.31, see {@link UIPixliteConfig}.
  */
 public class Output {
   private static final Logger logger = Logger.getLogger(Output.class.getName());
 
   public static LXDatagramOutput datagramOutput = null;
+  public static UniverseOutput pixliteOutput = null;
 
   public static final int MAX_OUTPUTS = 32;  // 32 outputs in expanded mode.
   public static final int RAVE_OUTPUTS = 8;
@@ -115,24 +117,193 @@ public class Output {
     }
   }
 
+  /**
+   * Compiled Pixlite universe map, see {@link #loadPixliteUniverseMap()}.
+   */
+  public static final String UNIVERSE_MAP_FILENAME = "pixlite_universes.bin";
+
+  /**
+   * Bump this whenever the wiring code in {@link #compilePixliteUniverseMap(boolean)} or
+   * {@link Panel#pointsInWireOrder()} changes so that stale compiled universe maps are rebuilt.
+   */
+  public static final int WIRING_VERSION = 1;
+
+  // Cone+Scoop uses 3 universes per sixteenth so the dance floor starts at universe 48, the interior
+  // lights follow the two dance floor outputs.
+  public static final int DANCE_UNIVERSE_START = 48;
+  public static final int INTERIOR_UNIVERSE_START = 51;
+
   /**
    * Each Pixlite output covers one sixteenth of the installation.  Dance floor is another 1 or 2 outputs.
    * Probably 2.
    * @param lx
    */
   public static void configurePixliteOutput(LX lx) {
-    List<ArtNetDatagram> datagrams = new ArrayList<ArtNetDatagram>();
+    UniverseMap universeMap = loadPixliteUniverseMap();
+    logger.info("Pixlite universe map: " + universeMap.size() + " universes, " + universeMap.points.length + " points");
+
+    int priority = Integer.parseInt(ConeDown.pixliteConfig.getStringParameter(UIPixliteConfig.PIXLITE_1_PRIORITY).getString());
+    if (priority < 0 || priority > 200) {
+      logger.warning("sACN priority " + priority + " is outside 0-200, clamping");
+      priority = Math.max(0, Math.min(200, priority));
+    }
+    int syncUniverse = Integer.parseInt(ConeDown.pixliteConfig.getStringParameter(UIPixliteConfig.PIXLITE_1_SYNC_UNIVERSE).getString());
+
+    // Pixlite 1 is controller 0 and keeps every universe that isn't listed by another Pixlite.
+    int[] controllerOf = new int[universeMap.size()];
+    List<Integer> pixliteNums = new ArrayList<Integer>();
+    pixliteNums.add(1);
+    for (int pixliteNum = 2; pixliteNum <= UIPixliteConfig.NUM_PIXLITES; pixliteNum++) {
+      String spec = ConeDown.pixliteConfig.getStringParameter("univ" + pixliteNum).getString().trim();
+      if (spec.isEmpty())
+        continue;
+      int controllerIndex = pixliteNums.size();
+      pixliteNums.add(pixliteNum);
+      for (int u = 0; u < universeMap.size(); u++) {
+        if (controllerOf[u] == 0 && universeInSpec(spec, universeMap.universes[u]))
+          controllerOf[u] = controllerIndex;
+      }
+    }
+
+    InetSocketAddress[] addresses = new InetSocketAddress[universeMap.size()];
+    UniverseOutput.Controller[] controllers = new UniverseOutput.Controller[pixliteNums.size()];
+    pixliteOutput = null;
+    try {
+      for (int c = 0; c < controllers.length; c++) {
+        int pixliteNum = pixliteNums.get(c);
+        String ipAddress = ConeDown.pixliteConfig.getStringParameter("ip" + pixliteNum).getString();
+        int port = Integer.parseInt(ConeDown.pixliteConfig.getStringParameter("port" + pixliteNum).getString());
+        boolean sacn = ConeDown.pixliteConfig.getBooleanParameter("sacn" + pixliteNum).getValueb();
+        boolean multicast = ConeDown.pixliteConfig.getBooleanParameter("mcast" + pixliteNum).getValueb();
+        controllers[c] = createController("pixlite" + pixliteNum, ipAddress, port, sacn, multicast, priority,
+            syncUniverse, universeMap, c, controllerOf, addresses);
+      }
+      pixliteOutput = new UniverseOutput(lx, universeMap, addresses, controllers, controllerOf);
+    } catch (IOException ioex) {
+      logger.log(Level.SEVERE, "Initializing Pixlite output failed.", ioex);
+    }
+    if (pixliteOutput != null) {
+      if (ConeDown.outputConfig != null)
+        ConeDown.outputConfig.apply(pixliteOutput);
+      lx.engine.output.addChild(pixliteOutput);
+    } else {
+      logger.log(Level.SEVERE, "Did not configure output, error during UniverseOutput init");
+    }
+  }
+
+  /**
+   * Whether a universe is in a Pixlite universe list, see {@link UIPixliteConfig}.  The list holds
+   * universe numbers, ranges like 48-51 and the region names sixteenths, dance and interior.
+   */
+  static public boolean universeInSpec(String spec, int universe) {
+    for (String item : spec.split(",")) {
+      item = item.trim();
+      int from;
+      int to;
+      if (item.isEmpty()) {
+        continue;
+      } else if ("sixteenths".equals(item)) {
+        from = 0;
+        to = DANCE_UNIVERSE_START - 1;
+      } else if ("dance".equals(item)) {
+        from = DANCE_UNIVERSE_START;
+        to = INTERIOR_UNIVERSE_START - 1;
+      } else if ("interior".equals(item)) {
+        from = INTERIOR_UNIVERSE_START;
+        to = Integer.MAX_VALUE;
+      } else {
+        try {
+          int dash = item.indexOf('-');
+          if (dash > 0) {
+            from = Integer.parseInt(item.substring(0, dash).trim());
+            to = Integer.parseInt(item.substring(dash + 1).trim());
+          } else {
+            from = to = Integer.parseInt(item);
+          }
+        } catch (NumberFormatException nfex) {
+          logger.warning("Ignoring bad universe list entry: " + item);
+          continue;
+        }
+      }
+      if (universe >= from && universe <= to)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Loads the compiled Pixlite universe map.  If there is no compiled map for the current model and
+   * wiring it is compiled and saved once, later launches only read it.  Use {@link UniverseMapCompiler}
+   * to recompile and write out the wiring documentation.
+   */
+  static public UniverseMap loadPixliteUniverseMap() {
+    long key = pixliteWiringKey();
+    UniverseMap universeMap = UniverseMap.load(UNIVERSE_MAP_FILENAME, key);
+    if (universeMap == null) {
+      logger.info("No compiled universe map for the current wiring, compiling " + UNIVERSE_MAP_FILENAME);
+      universeMap = compilePixliteUniverseMap(false);
+      try {
+        universeMap.save(UNIVERSE_MAP_FILENAME, key);
+      } catch (IOException ioex) {
+        logger.log(Level.WARNING, "Unable to save " + UNIVERSE_MAP_FILENAME, ioex);
+      }
+    }
+    return universeMap;
+  }
+
+  /**
+   * Hash of everything the Pixlite wiring is derived from: the panels, their points and the interior
+   * lights.
+   */
+  static public long pixliteWiringKey() {
+    long hash = 0xcbf29ce484222325L;
+    hash = fnv(hash, WIRING_VERSION);
+    hash = fnv(hash, ConeDown.LEDS_PER_UNIVERSE);
+    for (Panel panel : ConeDownModel.allPanels) {
+      hash = fnv(hash, panel.panelType == null ? -1 : panel.panelType.ordinal());
+      hash = fnv(hash, panel.panelNum);
+      hash = fnv(hash, panel.mirrored ? 1 : 0);
+      hash = fnv(hash, panel.danceXPanel);
+      hash = fnv(hash, panel.danceYPanel);
+      hash = fnv(hash, panel.dxfFilename == null ? 0 : panel.dxfFilename.hashCode());
+      for (CXPoint p : panel.getPoints()) {
+        hash = fnv(hash, p.index);
+        hash = fnv(hash, p.xCoord);
+        hash = fnv(hash, p.yCoord);
+        hash = fnv(hash, Float.floatToIntBits(p.x));
+        hash = fnv(hash, Float.floatToIntBits(p.y));
+        hash = fnv(hash, Float.floatToIntBits(p.z));
+      }
+    }
+    for (CXPoint p : ConeDownModel.interiorPoints) {
+      hash = fnv(hash, p.index);
+    }
+    return hash;
+  }
+
+  static long fnv(long hash, int value) {
+    for (int i = 0; i < 4; i++) {
+      hash ^= (value >>> (i * 8)) & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /**
+   * Walks the panels of each sixteenth, the dance floor and the interior lights in wire order and packs
+   * them into universes.
+   *
+   * @param exportFiles Also write the points_panel_*.csv, wiring_panel_*.txt and sixteenth_*.html files
+   *                    used to verify the wiring and log the per output details.
+   */
+  static public UniverseMap compilePixliteUniverseMap(boolean exportFiles) {
+    UniverseMap universeMap = new UniverseMap();
     List<Integer> countsPerOutput = new ArrayList<Integer>();
     // For each output, track the number of points per panel type so we can log the details to help
     // with output verification.
     List<Map<String, Integer>> countsByPanelType = new ArrayList<Map<String, Integer>>();
     List<Map<String, String>> allDXFByPanelType = new ArrayList<Map<String, String>>();
 
-
-    String artNetIpAddress = ConeDown.pixliteConfig.getStringParameter(UIPixliteConfig.PIXLITE_1_IP).getString();
-    int artNetIpPort = Integer.parseInt(ConeDown.pixliteConfig.getStringParameter(UIPixliteConfig.PIXLITE_1_PORT).getString());
-    logger.log(Level.INFO, "Using ArtNet: " + artNetIpAddress + ":" + artNetIpPort);
-
     int sixteenthNum = 0;
     // NOTE(tracy): universesPerSixteenth needs to be set correctly.  Some outputs use less than 3 universes but
     // we will just set 3 here and waste a few universes.
@@ -157,14 +328,15 @@ public class Output {
       for (List<Panel> layer : panelLayers) {
         // NOTE(Tracy):
         Panel panel = layer.get(0);
-        logger.info("");
-        logger.info("panel layer: " + Panel.panelTypeNames[panel.panelType.ordinal()]);
-        logger.info("dim: " + panel.pointsWide + "x" + panel.pointsHigh);
-        logger.info("sixteenth: " + sixteenthNum);
+        if (exportFiles) {
+          logger.info("");
+          logger.info("panel layer: " + Panel.panelTypeNames[panel.panelType.ordinal()]);
+          logger.info("dim: " + panel.pointsWide + "x" + panel.pointsHigh);
+          logger.info("sixteenth: " + sixteenthNum);
+        }
 
         // For the I panel layer, we don't have any panels between 5 and 10.
         if (panel.panelType == Panel.PanelType.I && (sixteenthNum > 4 && sixteenthNum < 11)) {
-          logger.info("Skipping output for nonexistent I panel # " + sixteenthNum);
           continue;
         }
 
@@ -173,7 +345,6 @@ public class Output {
         if (panel.panelType == Panel.PanelType.C && sixteenthNum % 2 == 0) {
           panel = layer.get(sixteenthNum / 2);
         } else if (panel.panelType == Panel.PanelType.D && sixteenthNum % 2 == 1) {
-          logger.info("Assign panel to D panel");
           panel = layer.get(sixteenthNum / 2);
         } else if (!(panel.panelType == Panel.PanelType.C || panel.panelType == Panel.PanelType.D)) {
           int iGapOffset = 0;
@@ -184,7 +355,8 @@ public class Output {
         } else {
           continue; // Skip C or D if it is not their turn.
         }
-        logger.info("panelType: " + Panel.panelTypeNames[panel.panelType.ordinal()]);
+        if (exportFiles)
+          logger.info("panelType: " + Panel.panelTypeNames[panel.panelType.ordinal()]);
         List<CXPoint> pointsWireOrder = panel.pointsInWireOrder();
 
         pointCountByPanelType.put(Panel.panelTypeNames[panel.panelType.ordinal()], pointsWireOrder.size());
@@ -197,7 +369,7 @@ public class Output {
         String dxfbase = panel.dxfFilename.replace(".dxf", "").replace("panel_", "").replace("_LED", "");
         panelKey = dxfbase + "_" + panel.panelNum;
         if (panel.mirrored) panelKey = panelKey + "_mirror";
-        if (!wireFilesWritten.contains(panelKey)) {
+        if (exportFiles && !wireFilesWritten.contains(panelKey)) {
           String pointsFilename = "points_panel_" + panelKey + ".csv";
           String wiringFilename = "wiring_panel_" + panelKey + ".txt";
           writePointsFile(pointsFilename, pointsWireOrder);
@@ -211,41 +383,11 @@ public class Output {
       }
 
       // Write out HTML documentation for wiring each sixteenth
-      writeSixteenthHtmlDoc(sixteenthNum, panelKeysInWireOrder);
+      if (exportFiles)
+        writeSixteenthHtmlDoc(sixteenthNum, panelKeysInWireOrder);
 
       countsPerOutput.add(allPointsWireOrder.size());
-
-      // NOTE(tracy): We have to create ArtNetDatagram with the actual numbers of our points or else it
-      // will puke internally. i.e. we can't just use 170 but then pass it less than 170 points so we
-      // need to figure out how large to make our channel array for the last universe.
-      int numUniversesThisWire = (int)Math.ceil((float)allPointsWireOrder.size()/170f);
-      int lastUniverseCount = allPointsWireOrder.size() - 170 * (numUniversesThisWire - 1);
-
-
-      int[] thisUniverseIndices = new int[170];
-      int curIndex = 0;
-      int curUnivOffset = 0;
-      for (CXPoint pt : allPointsWireOrder) {
-        thisUniverseIndices[curIndex] = pt.index;
-        curIndex++;
-        if (curIndex == 170 || (curUnivOffset == numUniversesThisWire - 1 && curIndex == lastUniverseCount)) {
-          logger.log(Level.INFO, "Adding datagram: universe=" + (univStartNum+curUnivOffset) + " points=" + curIndex);
-          ArtNetDatagram datagram = new ArtNetDatagram(thisUniverseIndices, curIndex*3, univStartNum + curUnivOffset);
-          try {
-            datagram.setAddress(artNetIpAddress).setPort(artNetIpPort);
-          } catch (UnknownHostException uhex) {
-            logger.log(Level.SEVERE, "Configuring ArtNet: " + artNetIpAddress + ":" + artNetIpPort, uhex);
-          }
-          datagrams.add(datagram);
-          curUnivOffset++;
-          curIndex = 0;
-          if (curUnivOffset == numUniversesThisWire - 1) {
-            thisUniverseIndices = new int[lastUniverseCount];
-          } else {
-            thisUniverseIndices = new int[170];
-          }
-        }
-      }
+      universeMap.addPoints(allPointsWireOrder, univStartNum);
     }
 
     // Dance panels.  Requires 2 outputs to minimize strand length.  The first output starts with
@@ -259,17 +401,16 @@ public class Output {
         int actualY = (down)?y:(ConeDownModel.dancePanelsHigh - 1 - y);
         Panel panel = Panel.getDancePanelXY(ConeDownModel.dancePanels, x, actualY);
         List<CXPoint> pointsWireOrder = panel.pointsInWireOrder();
-        logger.info("dance panel " + panel.danceXPanel + "," + panel.danceYPanel + " points: " +
-            pointsWireOrder.size());
+        if (exportFiles)
+          logger.info("dance panel " + panel.danceXPanel + "," + panel.danceYPanel + " points: " +
+              pointsWireOrder.size());
         pointsForDanceOutput1.addAll(pointsWireOrder);
       }
       down = false;
     }
     // Cone+Scoop uses 3 universes per sixteenth so we start at universe 48.
-    List<ArtNetDatagram> danceOutput1Datagrams = assignPointsToArtNetDatagrams(pointsForDanceOutput1, 48,
-        artNetIpAddress, artNetIpPort);
+    universeMap.addPoints(pointsForDanceOutput1, DANCE_UNIVERSE_START);
     countsPerOutput.add(pointsForDanceOutput1.size());
-    datagrams.addAll(danceOutput1Datagrams);
 
     // Dance Output 2
     List<CXPoint> pointsForDanceOutput2 = new ArrayList<CXPoint>();
@@ -280,21 +421,21 @@ public class Output {
       Panel panel = Panel.getDancePanelXY(ConeDownModel.dancePanels, x, actualY);
       List<CXPoint> pointsWireOrder = panel.pointsInWireOrder();
       pointsForDanceOutput2.addAll(pointsWireOrder);
-      logger.info("dance panel " + panel.danceXPanel + "," + panel.danceYPanel + " points: " +
-          pointsWireOrder.size());
+      if (exportFiles)
+        logger.info("dance panel " + panel.danceXPanel + "," + panel.danceYPanel + " points: " +
+            pointsWireOrder.size());
     }
 
     // Dance output 1 used 2 universes (49 points per panel * 6 panels = 294 points @ 170-per-universe)
-    List<ArtNetDatagram> danceOutput2Datagrams = assignPointsToArtNetDatagrams(pointsForDanceOutput2, 50,
-        artNetIpAddress, artNetIpPort);
+    universeMap.addPoints(pointsForDanceOutput2, 50);
     countsPerOutput.add(pointsForDanceOutput2.size());
-    datagrams.addAll(danceOutput2Datagrams);
 
     // Interior lights.  Dance output 2 used one universe so our start universe is 51.
-    List<ArtNetDatagram> interiorDatagrams = assignPointsToArtNetDatagrams(ConeDownModel.interiorPoints,
-        51, artNetIpAddress, artNetIpPort);
+    universeMap.addPoints(ConeDownModel.interiorPoints, INTERIOR_UNIVERSE_START);
     countsPerOutput.add(ConeDownModel.interiorPoints.size());
-    datagrams.addAll(interiorDatagrams);
+    universeMap.compile();
+    if (!exportFiles)
+      return universeMap;
 
     int i = 0;
     for (Integer count : countsPerOutput) {
@@ -314,25 +455,51 @@ public class Output {
       i++;
     }
 
-    try {
-      datagramOutput = new LXDatagramOutput(lx);
-      for (ArtNetDatagram datagram : datagrams) {
-        datagramOutput.addDatagram(datagram);
-      }
-      try {
-        datagramOutput.addDatagram(new ArtSyncDatagram().setAddress(artNetIpAddress).setPort(artNetIpPort));
-      } catch (UnknownHostException uhex) {
-        logger.log(Level.SEVERE, "Unknown host for ArtNet sync.", uhex);
-      }
-    } catch (SocketException sex) {
-      logger.log(Level.SEVERE, "Initializing LXDatagramOutput failed.", sex);
+    for (int u = 0; u < universeMap.size(); u++) {
+      logger.log(Level.INFO, "Adding universe=" + universeMap.universes[u] + " points=" + universeMap.pointCount(u));
     }
-    if (datagramOutput != null) {
-      lx.engine.output.addChild(datagramOutput);
+    logger.info("layers: " + panelLayers.size());
+    return universeMap;
+  }
+
+  /**
+   * Builds one controller and fills in the destinations of its universes.  ArtNet is sent unicast with
+   * ArtSync.  E1.31 is sent either unicast to the controller or to each universe's multicast group, with
+   * a sync packet on syncUniverse if it is not 0.
+   *
+   * @param controllerIndex The index of this controller in controllerOf.
+   * @param controllerOf The controller index of each universe in the map.
+   * @param addresses The destination of each universe in the map, filled in for this controller's universes.
+   */
+  static public UniverseOutput.Controller createController(String name, String ipAddress, int port, boolean sacn,
+                                                           boolean multicast, int priority, int syncUniverse,
+                                                           UniverseMap universeMap, int controllerIndex,
+                                                           int[] controllerOf, InetSocketAddress[] addresses) {
+    UniverseFormat format;
+    InetSocketAddress unicast;
+    InetSocketAddress[] syncAddresses = null;
+    if (!sacn) {
+      logger.log(Level.INFO, name + " using ArtNet: " + ipAddress + ":" + port);
+      format = new ArtNetFormat();
+      unicast = new InetSocketAddress(ipAddress, port);
+      syncAddresses = new InetSocketAddress[] {unicast};
     } else {
-      logger.log(Level.SEVERE, "Did not configure output, error during LXDatagramOutput init");
+      logger.log(Level.INFO, name + " using E1.31: " + (multicast ? "multicast" : ipAddress) + " priority=" +
+          priority + " sync=" + syncUniverse);
+      format = new E131Format(priority, syncUniverse);
+      unicast = new InetSocketAddress(ipAddress, E131Format.E131_PORT);
+      if (syncUniverse != 0)
+        syncAddresses = new InetSocketAddress[] {multicast ? E131Format.multicastAddress(syncUniverse) : unicast};
     }
-    logger.info("layers: " + panelLayers.size());
+    StringBuilder universes = new StringBuilder();
+    for (int u = 0; u < universeMap.size(); u++) {
+      if (controllerOf[u] != controllerIndex)
+        continue;
+      addresses[u] = (sacn && multicast) ? E131Format.multicastAddress(universeMap.universes[u] + 1) : unicast;
+      universes.append(" ").append(universeMap.universes[u]);
+    }
+    logger.log(Level.INFO, name + " universes:" + universes);
+    return new UniverseOutput.Controller(name, format, syncAddresses);
   }
 
   /**
@@ -348,6 +515,31 @@ public class Output {
   static public List<ArtNetDatagram> assignPointsToArtNetDatagrams(List<CXPoint> pointsWireOrder, int startUniverse,
                                                                    String ipAddress, int ipPort) {
     List<ArtNetDatagram> datagrams = new ArrayList<ArtNetDatagram>();
+    int curUnivOffset = 0;
+    for (int[] thisUniverseIndices : assignPointsToUniverses(pointsWireOrder)) {
+      logger.log(Level.INFO, "Adding datagram: universe=" + (startUniverse+curUnivOffset) + " points=" +
+          thisUniverseIndices.length);
+      ArtNetDatagram datagram = new ArtNetDatagram(thisUniverseIndices, thisUniverseIndices.length*3,
+          startUniverse + curUnivOffset);
+      try {
+        datagram.setAddress(ipAddress).setPort(ipPort);
+      } catch (UnknownHostException uhex) {
+        logger.log(Level.SEVERE, "Configuring ArtNet: " +ipAddress + ":" + ipPort, uhex);
+      }
+      datagrams.add(datagram);
+      curUnivOffset++;
+    }
+    return datagrams;
+  }
+
+  /**
+   * Chunks a set of points in wire order into universes of at most 170 pixels.  Each entry of the returned
+   * list holds the point indices for one universe.
+   * @param pointsWireOrder The points in wire order to map to universes.
+   * @return
+   */
+  static public List<int[]> assignPointsToUniverses(List<CXPoint> pointsWireOrder) {
+    List<int[]> universes = new ArrayList<int[]>();
 
     // NOTE(tracy): We have to create ArtNetDatagram with the actual numbers of our points or else it
     // will puke internally. i.e. we can't just use 170 but then pass it less than 170 points so we
@@ -363,14 +555,7 @@ public class Output {
       thisUniverseIndices[curIndex] = pt.index;
       curIndex++;
       if (curIndex == 170 || (curUnivOffset == numUniversesThisWire - 1 && curIndex == lastUniverseCount)) {
-        logger.log(Level.INFO, "Adding datagram: universe=" + (startUniverse+curUnivOffset) + " points=" + curIndex);
-        ArtNetDatagram datagram = new ArtNetDatagram(thisUniverseIndices, curIndex*3, startUniverse + curUnivOffset);
-        try {
-          datagram.setAddress(ipAddress).setPort(ipPort);
-        } catch (UnknownHostException uhex) {
-          logger.log(Level.SEVERE, "Configuring ArtNet: " +ipAddress + ":" + ipPort, uhex);
-        }
-        datagrams.add(datagram);
+        universes.add(thisUniverseIndices);
         curUnivOffset++;
         curIndex = 0;
         if (curUnivOffset == numUniversesThisWire - 1) {
@@ -380,7 +565,7 @@ public class Output {
         }
       }
     }
-    return datagrams;
+    return universes;
   }
 
   static public void writeSixteenthHtmlDoc(int sixteenth, List<String> panelKeysWireOrder) {
@@ -427,14 +612,16 @@ public class Output {
   }
 
   static public final int NUM_CARS = 5;
-  static public LXDatagramOutput carOutput = null;
+  static public UniverseOutput carOutput = null;
 
   static public void outputGalacticJungle(LX lx) {
-    List<ArtNetDatagram> allCarsAllDatagrams = new ArrayList<ArtNetDatagram>();
+    UniverseMap carsUniverseMap = new UniverseMap();
+    List<InetSocketAddress> carsAddresses = new ArrayList<InetSocketAddress>();
 
     // If we have an existing output, remove it and disable it.
     if (carOutput != null) {
       lx.engine.output.removeChild(carOutput);
+      carOutput.dispose();
     }
 
     for (int i = 0; i < NUM_CARS; i++) {
@@ -467,33 +654,29 @@ public class Output {
         }
       }
 
-      List<ArtNetDatagram> perCarDatagrams = assignPointsToArtNetDatagrams(allCarPoints, startUniv, ipAddress, port);
-
-      // We send separate ArtNet sync datagrams to each car independently
-      /*
-      try {
-        datagramOutput.addDatagram(new ArtSyncDatagram().setAddress(ipAddress).setPort(port));
-      } catch (UnknownHostException uhex) {
-        logger.log(Level.SEVERE, "Unknown host for Galactic ArtNet sync.", uhex);
+      int numCarUniverses = carsUniverseMap.addPoints(allCarPoints, startUniv);
+      InetSocketAddress carAddress = new InetSocketAddress(ipAddress, port);
+      for (int u = 0; u < numCarUniverses; u++) {
+        carsAddresses.add(carAddress);
       }
-      */
-      allCarsAllDatagrams.addAll(perCarDatagrams);
+      // ArtNet sync is not sent to the cars.
     }
+    carsUniverseMap.compile();
 
-    // For now we are just going to have one LXDatagramOutput for all cars.
+    // For now we are just going to have one output for all cars.
+    carOutput = null;
     try {
-      carOutput = new LXDatagramOutput(lx);
-      for (ArtNetDatagram datagram : allCarsAllDatagrams) {
-        carOutput.addDatagram(datagram);
-      }
-    } catch (SocketException sex) {
-      logger.log(Level.SEVERE, "Initializing Galactic LXDatagramOutput failed.", sex);
+      carOutput = new UniverseOutput(lx, carsUniverseMap, carsAddresses.toArray(new InetSocketAddress[0]), false);
+    } catch (IOException ioex) {
+      logger.log(Level.SEVERE, "Initializing Galactic output failed.", ioex);
     }
-    carOutput.enabled.setValue(false);
     if (carOutput != null) {
+      carOutput.enabled.setValue(false);
+      if (ConeDown.outputConfig != null)
+        ConeDown.outputConfig.apply(carOutput);
       lx.engine.output.addChild(carOutput);
     } else {
-      logger.log(Level.SEVERE, "Did not configure Galactic output, error during LXDatagramOutput init");
+      logger.log(Level.SEVERE, "Did not configure Galactic output, error during UniverseOutput init");
     }
   }
 
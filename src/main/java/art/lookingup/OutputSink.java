@@ -0,0 +1,302 @@
+package art.lookingup;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stand-in for the Pixlite and the cars when benchmarking output.  Receives ArtNet and E1.31 on the
+ * local machine, rebuilds frames from the data packets between sync packets and periodically logs, per
+ * universe, the packet rate, inter-arrival jitter, sequence gaps and payload length, and per protocol
+ * the achieved fps and the skew between a frame's data packets and its sync.  Universes whose payload
+ * length changes, or is not a whole number of pixels, are flagged since that usually means the universe
+ * packing is off.
+ * <p>
+ * Run it on its own with
+ * <pre>
+ *   java -cp conedown-1.0.0-jar-with-dependencies.jar art.lookingup.OutputSink [-interval 10]
+ *       [-artnet 6454] [-sacn 5568] [-mcast 52]
+ * </pre>
+ * and point the Pixlite IP at 127.0.0.1, or create one in process with
+ * {@link #OutputSink(int, int, int)} and {@link #start(long)}.  -mcast N joins the sACN multicast groups
+ * of universes 1 to N.</p>
+ */
+public class OutputSink {
+  private static final Logger logger = Logger.getLogger(OutputSink.class.getName());
+
+  static final int ARTNET = 0;
+  static final int SACN = 1;
+  static final String[] protocolNames = {"artnet", "sacn"};
+
+  private final List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+  private final List<Thread> threads = new ArrayList<Thread>();
+  private volatile boolean running = true;
+
+  private final Map<Integer, UniverseStats> universeStats = new TreeMap<Integer, UniverseStats>();
+  private final FrameStats[] frameStats = {new FrameStats(), new FrameStats()};
+  private long windowStartNanos = System.nanoTime();
+
+  static class UniverseStats {
+    int protocol;
+    int universe;
+    int length = -1;
+    boolean lengthChanged = false;
+    int lastSequence = -1;
+    long lastNanos = 0;
+    // Current report window.
+    long packets = 0;
+    long lost = 0;
+    long intervals = 0;
+    double intervalSum = 0;
+    double intervalSumSq = 0;
+    long maxInterval = 0;
+    long absentFrames = 0;
+  }
+
+  static class FrameStats {
+    BitSet received = new BitSet();
+    long firstDataNanos = 0;
+    long lastDataNanos = 0;
+    // Current report window.
+    long frames = 0;
+    long skewSum = 0;
+    long maxSkew = 0;
+    long lastDataToSyncSum = 0;
+  }
+
+  /**
+   * @param artNetPort Port to receive ArtNet on, or 0 for none.
+   * @param sacnPort Port to receive E1.31 on, or 0 for none.
+   * @param multicastUniverses Number of sACN multicast universes to join, starting at 1.
+   */
+  public OutputSink(int artNetPort, int sacnPort, int multicastUniverses) throws IOException {
+    if (artNetPort != 0) {
+      DatagramSocket socket = new DatagramSocket(null);
+      socket.setReuseAddress(true);
+      socket.bind(new InetSocketAddress(artNetPort));
+      socket.setReceiveBufferSize(4 * 1024 * 1024);
+      sockets.add(socket);
+    }
+    if (sacnPort != 0) {
+      MulticastSocket socket = new MulticastSocket(sacnPort);
+      socket.setReceiveBufferSize(4 * 1024 * 1024);
+      for (int universe = 1; universe <= multicastUniverses; universe++) {
+        socket.joinGroup(E131Format.multicastAddress(universe), null);
+      }
+      sockets.add(socket);
+    }
+  }
+
+  /**
+   * Starts a receive thread per socket and a thread that logs a report every interval.
+   */
+  public void start(final long intervalMs) {
+    for (final DatagramSocket socket : sockets) {
+      threads.add(new Thread(() -> receive(socket), "OutputSink " + socket.getLocalPort()));
+    }
+    threads.add(new Thread(() -> {
+      while (running) {
+        try {
+          Thread.sleep(intervalMs);
+        } catch (InterruptedException iex) {
+          return;
+        }
+        logger.info(report());
+      }
+    }, "OutputSink report"));
+    for (Thread t : threads) {
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  public void stop() {
+    running = false;
+    for (DatagramSocket socket : sockets) {
+      socket.close();
+    }
+    for (Thread t : threads) {
+      t.interrupt();
+    }
+  }
+
+  private void receive(DatagramSocket socket) {
+    DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+    while (running) {
+      try {
+        socket.receive(packet);
+      } catch (SocketException sex) {
+        return;  // Closed by stop().
+      } catch (IOException ioex) {
+        logger.log(Level.WARNING, "Receive failed", ioex);
+        continue;
+      }
+      onPacket(packet.getData(), packet.getLength(), System.nanoTime());
+    }
+  }
+
+  synchronized void onPacket(byte[] b, int length, long nanos) {
+    if (length >= ArtNetFormat.ARTSYNC_LENGTH && b[0] == 'A' && b[1] == 'r' && b[2] == 't') {
+      int opCode = (b[8] & 0xff) | ((b[9] & 0xff) << 8);
+      if (opCode == 0x5000 && length >= ArtNetFormat.ARTNET_HEADER_LENGTH) {
+        int universe = (b[14] & 0xff) | ((b[15] & 0xff) << 8);
+        int dataLength = ((b[16] & 0xff) << 8) | (b[17] & 0xff);
+        // ArtNet sequence 0 means sequencing is disabled.
+        int sequence = (b[12] & 0xff) == 0 ? -1 : (b[12] & 0xff);
+        onData(ARTNET, universe, dataLength, sequence, nanos);
+      } else if (opCode == 0x5200) {
+        onSync(ARTNET, nanos);
+      }
+    } else if (length >= E131Format.E131_SYNC_LENGTH && b[4] == 'A' && b[5] == 'S' && b[6] == 'C') {
+      int rootVector = readInt(b, 18);
+      int framingVector = readInt(b, 40);
+      if (rootVector == 0x00000004 && framingVector == 0x00000002 && length >= E131Format.E131_HEADER_LENGTH) {
+        int universe = ((b[113] & 0xff) << 8) | (b[114] & 0xff);
+        int dataLength = (((b[123] & 0xff) << 8) | (b[124] & 0xff)) - 1;
+        onData(SACN, universe, dataLength, b[E131Format.SEQUENCE_OFFSET] & 0xff, nanos);
+      } else if (rootVector == 0x00000008 && framingVector == 0x00000001) {
+        onSync(SACN, nanos);
+      }
+    }
+  }
+
+  static int readInt(byte[] b, int offset) {
+    return ((b[offset] & 0xff) << 24) | ((b[offset + 1] & 0xff) << 16) | ((b[offset + 2] & 0xff) << 8) |
+        (b[offset + 3] & 0xff);
+  }
+
+  private void onData(int protocol, int universe, int dataLength, int sequence, long nanos) {
+    int key = (protocol << 16) | universe;
+    UniverseStats stats = universeStats.get(key);
+    if (stats == null) {
+      stats = new UniverseStats();
+      stats.protocol = protocol;
+      stats.universe = universe;
+      universeStats.put(key, stats);
+    }
+    if (stats.length != -1 && stats.length != dataLength) {
+      stats.lengthChanged = true;
+    }
+    stats.length = dataLength;
+    if (sequence >= 0 && stats.lastSequence >= 0) {
+      // Late packets show up as a large forward gap, E1.31 treats -20..0 as out of order.
+      int gap = (sequence - stats.lastSequence) & 0xff;
+      if (gap > 1 && gap < 236) stats.lost += gap - 1;
+    }
+    stats.lastSequence = sequence;
+    if (stats.lastNanos != 0) {
+      long interval = nanos - stats.lastNanos;
+      stats.intervals++;
+      stats.intervalSum += interval;
+      stats.intervalSumSq += (double) interval * interval;
+      stats.maxInterval = Math.max(stats.maxInterval, interval);
+    }
+    stats.lastNanos = nanos;
+    stats.packets++;
+
+    FrameStats frame = frameStats[protocol];
+    if (frame.received.isEmpty()) frame.firstDataNanos = nanos;
+    frame.lastDataNanos = nanos;
+    frame.received.set(universe);
+  }
+
+  private void onSync(int protocol, long nanos) {
+    FrameStats frame = frameStats[protocol];
+    frame.frames++;
+    if (!frame.received.isEmpty()) {
+      long skew = nanos - frame.firstDataNanos;
+      frame.skewSum += skew;
+      frame.maxSkew = Math.max(frame.maxSkew, skew);
+      frame.lastDataToSyncSum += nanos - frame.lastDataNanos;
+    }
+    for (UniverseStats stats : universeStats.values()) {
+      if (stats.protocol == protocol && !frame.received.get(stats.universe)) {
+        stats.absentFrames++;
+      }
+    }
+    frame.received.clear();
+  }
+
+  /**
+   * Formats the stats for the window since the last report and starts a new window.
+   */
+  public synchronized String report() {
+    long now = System.nanoTime();
+    double seconds = (now - windowStartNanos) / 1e9;
+    windowStartNanos = now;
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Output sink, last %.1fs:", seconds));
+    for (int protocol = 0; protocol < frameStats.length; protocol++) {
+      FrameStats frame = frameStats[protocol];
+      if (frame.frames == 0) continue;
+      sb.append(String.format("%n  %s sync: fps=%.2f skew first->sync avg=%.2fms max=%.2fms last->sync avg=%.2fms",
+          protocolNames[protocol], frame.frames / seconds, frame.skewSum / 1e6 / frame.frames,
+          frame.maxSkew / 1e6, frame.lastDataToSyncSum / 1e6 / frame.frames));
+      frame.frames = 0;
+      frame.skewSum = 0;
+      frame.maxSkew = 0;
+      frame.lastDataToSyncSum = 0;
+    }
+    for (UniverseStats stats : universeStats.values()) {
+      double mean = stats.intervals == 0 ? 0 : stats.intervalSum / stats.intervals;
+      double variance = stats.intervals == 0 ? 0 : stats.intervalSumSq / stats.intervals - mean * mean;
+      sb.append(String.format("%n  %s %d: fps=%.2f interval avg=%.2fms jitter=%.2fms max=%.2fms lost=%d len=%d",
+          protocolNames[stats.protocol], stats.universe, stats.packets / seconds, mean / 1e6,
+          Math.sqrt(Math.max(variance, 0)) / 1e6, stats.maxInterval / 1e6, stats.lost, stats.length));
+      if (stats.absentFrames > 0) {
+        sb.append(" absent=").append(stats.absentFrames);
+      }
+      // ArtNet pads odd lengths by one byte.
+      int pixelBytes = stats.length - (stats.protocol == ARTNET && stats.length % 2 == 0 && stats.length % 3 != 0 ? 1 : 0);
+      if (stats.lengthChanged || pixelBytes % 3 != 0 || pixelBytes > ConeDown.LEDS_PER_UNIVERSE * 3) {
+        sb.append(" BAD LENGTH");
+      }
+      stats.packets = 0;
+      stats.lost = 0;
+      stats.intervals = 0;
+      stats.intervalSum = 0;
+      stats.intervalSumSq = 0;
+      stats.maxInterval = 0;
+      stats.absentFrames = 0;
+      stats.lengthChanged = false;
+    }
+    return sb.toString();
+  }
+
+  public static void main(String[] args) throws IOException {
+    long intervalMs = TimeUnit.SECONDS.toMillis(10);
+    int artNetPort = ArtNetFormat.ARTNET_PORT;
+    int sacnPort = E131Format.E131_PORT;
+    int multicastUniverses = 0;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if ("-interval".equals(args[i])) {
+        intervalMs = (long) (Double.parseDouble(args[i + 1]) * 1000);
+      } else if ("-artnet".equals(args[i])) {
+        artNetPort = Integer.parseInt(args[i + 1]);
+      } else if ("-sacn".equals(args[i])) {
+        sacnPort = Integer.parseInt(args[i + 1]);
+      } else if ("-mcast".equals(args[i])) {
+        multicastUniverses = Integer.parseInt(args[i + 1]);
+      }
+    }
+    OutputSink sink = new OutputSink(artNetPort, sacnPort, multicastUniverses);
+    logger.info("Listening for ArtNet on " + artNetPort + " and E1.31 on " + sacnPort);
+    sink.start(intervalMs);
+    try {
+      Thread.currentThread().join();
+    } catch (InterruptedException iex) {
+      sink.stop();
+    }
+  }
+}
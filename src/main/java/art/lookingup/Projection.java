@@ -6,9 +6,25 @@ public interface Projection {
 
     public int computePoint(CXPoint p, PImage img, int xoffset, int yoffset);
 
+    /**
+     * Batch form of computePoint() over the raw pixels of an ARGB image,
+     * srcWidth x srcHeight, where pixels outside the image read as 0 like
+     * PImage.get().  Writes outColors[p] for every point index p in
+     * pointIndices.
+     */
+    public void sampleAll(int[] srcPixels, int srcWidth, int srcHeight, int xoffset, int yoffset,
+			  int[] pointIndices, int[] outColors);
+
     public CXPoint lookupPoint(float x, float y);
 
     public float xScale(float x, float y);
 
     public int factor();
+
+    /**
+     * The same projection sampling with another reconstruction filter.
+     * Without super-sampling there is nothing to filter and this
+     * projection is returned.
+     */
+    public Projection withFilter(ReconstructionFilter filter);
 }
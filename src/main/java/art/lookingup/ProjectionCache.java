@@ -0,0 +1,152 @@
+package art.lookingup;
+
+import heronarts.lx.model.LXModel;
+import heronarts.lx.model.LXPoint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static art.lookingup.ConeDownModel.POINTS_HIGH;
+import static art.lookingup.ConeDownModel.POINTS_WIDE;
+
+/**
+ * On-disk cache of the projection tables.  The tables only depend on the projected point coordinates
+ * and the super-sampling factor, so a restart with an unchanged model maps them back in instead of
+ * recomputing them.
+ * <p>
+ * Each super-sampling level has its own file, {@code projection_<ss>x.bin}, tagged with
+ * {@link #modelKey(LXModel)}.  A file for a different model, an older layout or a short write is
+ * ignored and replaced with freshly built tables.</p>
+ */
+public class ProjectionCache {
+  private static final Logger logger = Logger.getLogger(ProjectionCache.class.getName());
+
+  public static final String FILENAME_PREFIX = "projection_";
+
+  // File layout, big endian: magic, version, key, super-sampling, first table length, second table
+  // length, first table, second table.  The tables are mapping/lookup for the true projection and
+  // positions/subpixels for the anti-aliased ones, with lookup holding point indices or -1.
+  private static final int FILE_MAGIC = 0x43445030;  // "CDP0"
+  private static final int FILE_VERSION = 2;
+  private static final int FILE_HEADER_LENGTH = 4 + 4 + 8 + 4 + 4 + 4;
+
+  public static String filename(int superSampling) {
+    return FILENAME_PREFIX + superSampling + "x.bin";
+  }
+
+  /**
+   * Hashes every input of the projection builders: the image size and, per point in index order,
+   * its projected coordinates and whether it is on the dance floor.
+   */
+  public static long modelKey(LXModel model) {
+    LXPoint[] points = new LXPoint[model.size];
+    for (LXPoint lxp : model.points) {
+      points[lxp.index] = lxp;
+    }
+    long hash = 0xcbf29ce484222325L;
+    hash = Output.fnv(hash, FILE_VERSION);
+    hash = Output.fnv(hash, POINTS_WIDE);
+    hash = Output.fnv(hash, POINTS_HIGH);
+    hash = Output.fnv(hash, model.size);
+    for (LXPoint lxp : points) {
+      CXPoint cxp = (CXPoint) lxp;
+      if (cxp.panel == null) {
+        hash = Output.fnv(hash, -1);
+        continue;
+      }
+      float[] coords = ConeDownModel.pointToProjectionCoords(cxp);
+      hash = Output.fnv(hash, Float.floatToIntBits(coords[0]));
+      hash = Output.fnv(hash, Float.floatToIntBits(coords[1]));
+      hash = Output.fnv(hash, cxp.panel.panelRegion == Panel.PanelRegion.DANCEFLOOR ? 1 : 0);
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the projection for a super-sampling level, from the cache file when it matches the
+   * model and otherwise by building it and rewriting the file.
+   */
+  public static Projection get(LXModel model, long key, int superSampling) {
+    String filename = filename(superSampling);
+    int[][] tables = load(filename, key, superSampling);
+    if (tables != null) {
+      logger.info("Loaded " + superSampling + "x projection from " + filename);
+      if (superSampling == 1) {
+        return new TrueProjection(model, tables[0], tables[1]);
+      }
+      return new AntiAliased(model, superSampling, tables[0], tables[1]);
+    }
+
+    logger.info("Computing " + superSampling + "x projection");
+    if (superSampling == 1) {
+      TrueProjection projection = new TrueProjection(model);
+      save(filename, key, superSampling, projection.mapping, projection.lookupIndices());
+      return projection;
+    }
+    AntiAliased projection = new AntiAliased(model, superSampling);
+    save(filename, key, superSampling, projection.positions, projection.subpixels);
+    return projection;
+  }
+
+  static void save(String filename, long key, int superSampling, int[] first, int[] second) {
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+      try {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+        out.writeLong(key);
+        out.writeInt(superSampling);
+        out.writeInt(first.length);
+        out.writeInt(second.length);
+        for (int v : first) out.writeInt(v);
+        for (int v : second) out.writeInt(v);
+      } finally {
+        out.close();
+      }
+    } catch (IOException ioex) {
+      logger.log(Level.WARNING, "Unable to write projection cache " + filename, ioex);
+    }
+  }
+
+  /**
+   * @return The two tables, or null if the file is missing, unreadable or was written for another
+   * model, level or layout.
+   */
+  static int[][] load(String filename, long key, int superSampling) {
+    File file = new File(filename);
+    if (!file.exists()) return null;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      if (channel.size() < FILE_HEADER_LENGTH) return null;
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION || buffer.getLong(8) != key
+          || buffer.getInt(16) != superSampling) {
+        logger.info("Projection cache " + filename + " is stale");
+        return null;
+      }
+      int firstLength = buffer.getInt(20);
+      int secondLength = buffer.getInt(24);
+      if (channel.size() != FILE_HEADER_LENGTH + 4L * (firstLength + secondLength)) {
+        logger.warning("Truncated projection cache " + filename);
+        return null;
+      }
+      buffer.position(FILE_HEADER_LENGTH);
+      IntBuffer ints = buffer.asIntBuffer();
+      int[][] tables = new int[][] {new int[firstLength], new int[secondLength]};
+      ints.get(tables[0]);
+      ints.get(tables[1]);
+      return tables;
+    } catch (IOException ioex) {
+      logger.log(Level.WARNING, "Unable to load projection cache " + filename, ioex);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package art.lookingup;
+
+/**
+ * Reconstruction filters for sampling a super-sampled image at the LED
+ * positions.  Distances are in units of the spacing between points, so a
+ * filter covers the same area of the installation at every super-sampling
+ * level.
+ *
+ * BOX is the plain average over each point's nearest-point cell.  The
+ * others weight every subpixel within their radius by distance to the
+ * point, so neighboring points' footprints overlap and motion blends
+ * smoothly from one LED to the next.
+ */
+public enum ReconstructionFilter {
+    BOX(0.5),
+    TENT(1.0),
+    GAUSSIAN(1.5),
+    LANCZOS(2.0);
+
+    // Gaussian standard deviation, in point spacings.
+    static final double SIGMA = 0.5;
+
+    public final double radius;
+
+    ReconstructionFilter(double radius) {
+	this.radius = radius;
+    }
+
+    /** Unnormalized weight at distance d from the point, 0 outside radius. */
+    public double weight(double d) {
+	if (d >= radius) {
+	    return 0;
+	}
+	switch (this) {
+	case TENT:
+	    return 1 - d;
+	case GAUSSIAN:
+	    return Math.exp(-d * d / (2 * SIGMA * SIGMA));
+	case LANCZOS:
+	    return sinc(d) * sinc(d / radius);
+	default:
+	    return 1;
+	}
+    }
+
+    static double sinc(double x) {
+	if (x == 0) {
+	    return 1;
+	}
+	return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+}
@@ -0,0 +1,206 @@
+package art.lookingup;
+
+import art.lookingup.colors.Colors;
+import heronarts.lx.color.LXColor;
+import heronarts.lx.model.LXModel;
+import heronarts.lx.model.LXPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+
+/**
+ * Offline tool that checks the batch sampler, {@link Projection#sampleAll}, against the per-point
+ * {@link Projection#computePoint} it replaces, and times both.  For every super-sampling level up to
+ * {@link ConeDown#MAX_SUPER_SAMPLING} and every {@link ReconstructionFilter} it samples random images
+ * at several offsets, some reaching past the image edges, and an all-white image, which gives the
+ * largest channel sums the packed integer lanes have to hold.  Every point must match exactly.
+ * <p>
+ * Both of those share the integer kernel, so the BOX filter is also compared to the float average
+ * computePoint took before that kernel, kept here as {@link #floatReference}.  The largest difference
+ * in any channel is reported, not failed on: the two round differently, by at most one step.</p>
+ * <p>
+ * The timings are plain {@code System.nanoTime} loops after a warm up, not a JMH harness, so treat
+ * them as rough.  Run it from the directory ConeDown runs in after changing either sampler:</p>
+ * <pre>
+ *   java -cp conedown-1.0.0-jar-with-dependencies.jar art.lookingup.SamplerBenchmark
+ * </pre>
+ * Exits with status 1 if any point differs between sampleAll and computePoint.
+ */
+public class SamplerBenchmark {
+  private static final Logger logger = Logger.getLogger(SamplerBenchmark.class.getName());
+
+  static final int WARMUP_FRAMES = 200;
+  static final int TIMED_FRAMES = 500;
+
+  public static void main(String[] args) {
+    LXModel model = ConeDownModel.createModel();
+    long key = ProjectionCache.modelKey(model);
+    List<CXPoint> points = new ArrayList<CXPoint>();
+    for (LXPoint p : model.points) {
+      if (((CXPoint) p).panel != null) {
+        points.add((CXPoint) p);
+      }
+    }
+    int[] indices = new int[points.size()];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = points.get(i).index;
+    }
+    Random random = new Random(1);
+    int mismatches = 0;
+
+    for (int ss = ConeDown.MIN_SUPER_SAMPLING; ss <= ConeDown.MAX_SUPER_SAMPLING; ss++) {
+      Projection level = ProjectionCache.get(model, key, ss);
+      int width = ConeDownModel.POINTS_WIDE * ss;
+      int height = ConeDownModel.POINTS_HIGH * ss;
+      PImage white = new PImage(width, height, PConstants.ARGB);
+      Arrays.fill(white.pixels, 0xffffffff);
+      PImage noise = new PImage(width, height, PConstants.ARGB);
+
+      for (ReconstructionFilter filter : ReconstructionFilter.values()) {
+        Projection projection = level.withFilter(filter);
+        // Before the integer kernel there were only BOX projections, and 1x was never averaged.
+        AntiAliased reference = filter == ReconstructionFilter.BOX && projection instanceof AntiAliased
+            ? (AntiAliased) projection : null;
+        int floatDifference = 0;
+        int[][] offsets = {{0, 0}, {5 * ss, -3 * ss}, {-7 * ss, 11 * ss}, {-width / 2, 0}};
+        for (int[] offset : offsets) {
+          for (int i = 0; i < noise.pixels.length; i++) {
+            noise.pixels[i] = random.nextInt();
+          }
+          mismatches += compare(projection, noise, offset[0], offset[1], model.size, points, indices);
+          if (reference != null) {
+            floatDifference = Math.max(floatDifference,
+                floatDifference(reference, noise, offset[0], offset[1], model.size, points, indices));
+          }
+        }
+        mismatches += compare(projection, white, 0, 0, model.size, points, indices);
+        if (reference != null) {
+          floatDifference = Math.max(floatDifference,
+              floatDifference(reference, white, 0, 0, model.size, points, indices));
+          logger.info(String.format("%dx %-8s largest channel difference from the float reference: %d",
+              ss, filter, floatDifference));
+        }
+
+        int[] colors = new int[model.size];
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+          computeAll(projection, noise, points, colors);
+          projection.sampleAll(noise.pixels, width, height, 0, 0, indices, colors);
+        }
+        long start = System.nanoTime();
+        for (int frame = 0; frame < TIMED_FRAMES; frame++) {
+          computeAll(projection, noise, points, colors);
+        }
+        long perPointNanos = (System.nanoTime() - start) / TIMED_FRAMES;
+        start = System.nanoTime();
+        for (int frame = 0; frame < TIMED_FRAMES; frame++) {
+          projection.sampleAll(noise.pixels, width, height, 0, 0, indices, colors);
+        }
+        long batchNanos = (System.nanoTime() - start) / TIMED_FRAMES;
+        logger.info(String.format("%dx %-8s computePoint %.3fms/frame, sampleAll %.3fms/frame, %.1fx",
+            ss, filter, perPointNanos / 1e6, batchNanos / 1e6, (double) perPointNanos / batchNanos));
+        if (reference != null) {
+          for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            referenceAll(reference, noise, points, colors);
+          }
+          start = System.nanoTime();
+          for (int frame = 0; frame < TIMED_FRAMES; frame++) {
+            referenceAll(reference, noise, points, colors);
+          }
+          long referenceNanos = (System.nanoTime() - start) / TIMED_FRAMES;
+          logger.info(String.format("%dx %-8s float reference %.3fms/frame, sampleAll %.1fx faster",
+              ss, filter, referenceNanos / 1e6, (double) referenceNanos / batchNanos));
+        }
+        if (ss == 1) {
+          // Without super-sampling every filter is the same projection.
+          break;
+        }
+      }
+    }
+
+    if (mismatches > 0) {
+      logger.severe(mismatches + " points differ between sampleAll and computePoint");
+      System.exit(1);
+    }
+    logger.info("sampleAll matches computePoint at every level and filter");
+    System.exit(0);
+  }
+
+  private static void computeAll(Projection projection, PImage image, List<CXPoint> points, int[] colors) {
+    for (CXPoint p : points) {
+      colors[p.index] = projection.computePoint(p, image, 0, 0);
+    }
+  }
+
+  private static void referenceAll(AntiAliased projection, PImage image, List<CXPoint> points, int[] colors) {
+    for (CXPoint p : points) {
+      colors[p.index] = floatReference(projection, p, image, 0, 0);
+    }
+  }
+
+  /**
+   * AntiAliased.computePoint as it was before the integer kernel: an average of the point's subpixels
+   * in float, truncated.
+   */
+  static int floatReference(AntiAliased projection, CXPoint cxp, PImage img, int xoffset, int yoffset) {
+    float r = 0, g = 0, b = 0, a = 0;
+    int end = projection.positions[cxp.index + 1];
+    float w = 1f / (end - projection.positions[cxp.index]);
+
+    for (int off = projection.positions[cxp.index]; off < end; off++) {
+      int subpos = projection.subpixels[off];
+      int subx = subpos % projection.ssWide + xoffset;
+      int suby = subpos / projection.ssWide + yoffset;
+      int s = img.get(subx, suby);
+
+      r += w * (float) Colors.red(s);
+      g += w * (float) Colors.green(s);
+      b += w * (float) Colors.blue(s);
+      a += w * (float) Colors.alpha(s);
+    }
+    return LXColor.rgba((int) r, (int) g, (int) b, (int) a);
+  }
+
+  // Returns the largest difference in any channel of any point between sampleAll and the float reference.
+  private static int floatDifference(AntiAliased projection, PImage image, int xOffset, int yOffset, int size,
+                                     List<CXPoint> points, int[] indices) {
+    int[] actual = new int[size];
+    projection.sampleAll(image.pixels, image.pixelWidth, image.pixelHeight, xOffset, yOffset, indices, actual);
+    int largest = 0;
+    for (CXPoint p : points) {
+      int expected = floatReference(projection, p, image, xOffset, yOffset);
+      for (int shift = 0; shift < 32; shift += 8) {
+        int difference = Math.abs(((expected >>> shift) & 0xff) - ((actual[p.index] >>> shift) & 0xff));
+        largest = Math.max(largest, difference);
+      }
+    }
+    return largest;
+  }
+
+  // Returns the number of points where the two samplers disagree, logging the first.
+  private static int compare(Projection projection, PImage image, int xOffset, int yOffset, int size,
+                             List<CXPoint> points, int[] indices) {
+    int[] expected = new int[size];
+    int[] actual = new int[size];
+    for (CXPoint p : points) {
+      expected[p.index] = projection.computePoint(p, image, xOffset, yOffset);
+    }
+    projection.sampleAll(image.pixels, image.pixelWidth, image.pixelHeight, xOffset, yOffset, indices, actual);
+    int differ = 0;
+    for (int index : indices) {
+      if (expected[index] != actual[index]) {
+        if (differ == 0) {
+          logger.warning(String.format("%dx point %d at offset %d,%d: computePoint %08x, sampleAll %08x",
+              projection.factor(), index, xOffset, yOffset, expected[index], actual[index]));
+        }
+        differ++;
+      }
+    }
+    return differ;
+  }
+}
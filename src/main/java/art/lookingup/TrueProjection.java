@@ -3,28 +3,27 @@ package art.lookingup;
 import static art.lookingup.ConeDownModel.POINTS_HIGH;
 import static art.lookingup.ConeDownModel.POINTS_WIDE;
 
-import com.github.davidmoten.rtree.Entry;
-import com.github.davidmoten.rtree.RTree;
-import com.github.davidmoten.rtree.Visualizer;
-import com.github.davidmoten.rtree.geometry.Geometries;
-import com.github.davidmoten.rtree.geometry.Geometry;
-import com.github.davidmoten.rtree.geometry.Point;
-
 import processing.core.PImage;
 
 import heronarts.lx.model.LXPoint;
 import heronarts.lx.model.LXModel;
 
+import java.util.Arrays;
+
 public class TrueProjection implements Projection {
     int []mapping;
     CXPoint []lookup;
 
     public TrueProjection(LXModel model) {
-	RTree<CXPoint, Point> tree = RTree.create();
-
 	this.mapping = new int[model.size];
 	this.lookup = new CXPoint[POINTS_WIDE * POINTS_HIGH];
 
+	CXPoint[] slots = new CXPoint[model.size];
+	float[] xs = new float[model.size];
+	float[] ys = new float[model.size];
+	int[] order = new int[model.size];
+	int nSlots = 0;
+
 	for (LXPoint lxp : model.points) {
 	    CXPoint cxp = (CXPoint) lxp;
 
@@ -38,22 +37,55 @@ public class TrueProjection implements Projection {
 	    int x = (int)(coords[0] + 0.5);
 	    int y = (int)(coords[1] + 0.5);
 
-	    tree = tree.add(cxp, Geometries.point(x, y));
+	    slots[nSlots] = cxp;
+	    xs[nSlots] = x;
+	    ys[nSlots] = y;
+	    order[nSlots] = cxp.index;
+	    nSlots++;
 
 	    this.mapping[cxp.index] = (y * POINTS_WIDE) + x;
 	}
 
-	for (int y = 0; y < POINTS_HIGH; y++) {
-	    for (int x = 0; x < POINTS_WIDE; x++) {
-		for (Entry<CXPoint, Point> point :
-			 tree.nearest(Geometries.point(x, y), Double.POSITIVE_INFINITY, 1).
-			 toBlocking().toIterable()) {
-		    this.lookup[y * POINTS_WIDE + x] = point.value();
-		}		
+	NearestPointGrid grid = new NearestPointGrid(Arrays.copyOf(xs, nSlots),
+						     Arrays.copyOf(ys, nSlots),
+						     Arrays.copyOf(order, nSlots),
+						     POINTS_WIDE, POINTS_HIGH, 1);
+	int[] nearest = grid.nearestTable(POINTS_WIDE, POINTS_HIGH, Double.POSITIVE_INFINITY, null);
+
+	for (int idx = 0; idx < nearest.length; idx++) {
+	    if (nearest[idx] >= 0) {
+		this.lookup[idx] = slots[nearest[idx]];
 	    }
 	}
     }
 
+    /**
+     * Restores the tables saved by {@link ProjectionCache}, with the lookup
+     * table given as point indices.
+     */
+    TrueProjection(LXModel model, int[] mapping, int[] lookupIndices) {
+	LXPoint[] points = new LXPoint[model.size];
+	for (LXPoint lxp : model.points) {
+	    points[lxp.index] = lxp;
+	}
+
+	this.mapping = mapping;
+	this.lookup = new CXPoint[lookupIndices.length];
+	for (int idx = 0; idx < lookupIndices.length; idx++) {
+	    if (lookupIndices[idx] >= 0) {
+		this.lookup[idx] = (CXPoint) points[lookupIndices[idx]];
+	    }
+	}
+    }
+
+    int[] lookupIndices() {
+	int[] indices = new int[lookup.length];
+	for (int idx = 0; idx < lookup.length; idx++) {
+	    indices[idx] = lookup[idx] == null ? -1 : lookup[idx].index;
+	}
+	return indices;
+    }
+
     public CXPoint lookupPoint(float x, float y) {
 	int xi = Math.max(0, Math.min((int)(x + 0.5), POINTS_WIDE-1));
 	int yi = Math.max(0, Math.min((int)(y + 0.5), POINTS_HIGH-1));
@@ -75,6 +107,25 @@ public class TrueProjection implements Projection {
 	return img.get(x + xoffset, y + yoffset);
     }
 
+    public void sampleAll(int[] srcPixels, int srcWidth, int srcHeight, int xoffset, int yoffset,
+			  int[] pointIndices, int[] outColors) {
+	for (int k = 0; k < pointIndices.length; k++) {
+	    int p = pointIndices[k];
+	    int idx = mapping[p];
+	    int x = idx % POINTS_WIDE + xoffset;
+	    int y = idx / POINTS_WIDE + yoffset;
+	    if (x < 0 || y < 0 || x >= srcWidth || y >= srcHeight) {
+		outColors[p] = 0;
+	    } else {
+		outColors[p] = srcPixels[y * srcWidth + x];
+	    }
+	}
+    }
+
+    public Projection withFilter(ReconstructionFilter filter) {
+	return this;
+    }
+
     public int factor() {
 	return 1;
     }
@@ -0,0 +1,26 @@
+package art.lookingup;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format used by {@link UniverseOutput}.  Packets are preformatted once at construction with
+ * {@link #writeHeader(ByteBuffer, int, int)} and only the DMX payload and the per-packet fields touched
+ * in {@link #beforeSend(ByteBuffer, boolean)} change afterwards.
+ */
+public interface UniverseFormat {
+  /** Offset of the first DMX slot in a data packet. */
+  int headerLength();
+
+  /** Length of the DMX payload for a universe with the given number of points. */
+  int dataLength(int pointCount);
+
+  void writeHeader(ByteBuffer packet, int universe, int dataLength);
+
+  /** Length of the sync packet. */
+  int syncLength();
+
+  void writeSync(ByteBuffer packet);
+
+  /** Called right before a data or sync packet is written, for sequence numbers and the like. */
+  void beforeSend(ByteBuffer packet, boolean sync);
+}
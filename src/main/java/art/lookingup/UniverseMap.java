@@ -0,0 +1,156 @@
+package art.lookingup;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compiled mapping from DMX universes to model point indices.  Every universe shares one flat index
+ * table so that the output stage can walk all universes of a frame without chasing a separate
+ * index array per datagram.
+ * <p>
+ * Universe u covers {@code points[offsets[u]]} through {@code points[offsets[u + 1] - 1]} and is sent
+ * as universe number {@code universes[u]}.</p>
+ * <p>
+ * A compiled map can be saved to a small binary file tagged with a key describing its inputs and
+ * mapped back in on a later launch, see {@link #load(String, long)}.</p>
+ */
+public class UniverseMap {
+  private static final Logger logger = Logger.getLogger(UniverseMap.class.getName());
+
+  // File layout, big endian: magic, version, key, universe count, point count, universes, offsets, points.
+  private static final int FILE_MAGIC = 0x43445530;  // "CDU0"
+  private static final int FILE_VERSION = 1;
+  private static final int FILE_HEADER_LENGTH = 4 + 4 + 8 + 4 + 4;
+
+  public int[] universes = new int[0];
+  public int[] offsets = new int[] {0};
+  public int[] points = new int[0];
+
+  private List<Integer> pendingUniverses = new ArrayList<Integer>();
+  private List<int[]> pendingIndices = new ArrayList<int[]>();
+
+  /**
+   * Adds a universe to the map.  The map must be compiled with {@link #compile()} before use.
+   *
+   * @param universe The DMX universe number.
+   * @param pointIndices The point indices in wire order, at most {@link ConeDown#LEDS_PER_UNIVERSE}.
+   */
+  public UniverseMap addUniverse(int universe, int[] pointIndices) {
+    pendingUniverses.add(universe);
+    pendingIndices.add(pointIndices);
+    return this;
+  }
+
+  /**
+   * Chunks a run of points in wire order into consecutive universes starting at startUniverse.
+   *
+   * @return The number of universes used.
+   */
+  public int addPoints(List<CXPoint> pointsWireOrder, int startUniverse) {
+    List<int[]> chunks = Output.assignPointsToUniverses(pointsWireOrder);
+    for (int i = 0; i < chunks.size(); i++) {
+      addUniverse(startUniverse + i, chunks.get(i));
+    }
+    return chunks.size();
+  }
+
+  /**
+   * Flattens all universes added so far into the {@link #universes}, {@link #offsets} and
+   * {@link #points} tables.
+   */
+  public UniverseMap compile() {
+    int total = 0;
+    for (int[] indices : pendingIndices) {
+      total += indices.length;
+    }
+    universes = new int[pendingUniverses.size()];
+    offsets = new int[pendingUniverses.size() + 1];
+    points = new int[total];
+    int pos = 0;
+    for (int u = 0; u < universes.length; u++) {
+      int[] indices = pendingIndices.get(u);
+      universes[u] = pendingUniverses.get(u);
+      offsets[u] = pos;
+      System.arraycopy(indices, 0, points, pos, indices.length);
+      pos += indices.length;
+    }
+    offsets[universes.length] = pos;
+    return this;
+  }
+
+  public int size() {
+    return universes.length;
+  }
+
+  public int pointCount(int u) {
+    return offsets[u + 1] - offsets[u];
+  }
+
+  /**
+   * Writes the compiled map.
+   *
+   * @param key Identifies the inputs the map was compiled from, checked by {@link #load(String, long)}.
+   */
+  public void save(String filename, long key) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+    try {
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(FILE_VERSION);
+      out.writeLong(key);
+      out.writeInt(universes.length);
+      out.writeInt(points.length);
+      for (int universe : universes) out.writeInt(universe);
+      for (int offset : offsets) out.writeInt(offset);
+      for (int point : points) out.writeInt(point);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Maps in a map written by {@link #save(String, long)}.
+   *
+   * @return The map, or null if the file is missing, unreadable or was compiled for a different key.
+   */
+  static public UniverseMap load(String filename, long key) {
+    File file = new File(filename);
+    if (!file.exists()) return null;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      if (channel.size() < FILE_HEADER_LENGTH) return null;
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION || buffer.getLong(8) != key) {
+        return null;
+      }
+      int numUniverses = buffer.getInt(16);
+      int numPoints = buffer.getInt(20);
+      if (channel.size() != FILE_HEADER_LENGTH + 4L * (numUniverses + numUniverses + 1 + numPoints)) {
+        logger.warning("Truncated universe map " + filename);
+        return null;
+      }
+      buffer.position(FILE_HEADER_LENGTH);
+      IntBuffer ints = buffer.asIntBuffer();
+      UniverseMap map = new UniverseMap();
+      map.universes = new int[numUniverses];
+      map.offsets = new int[numUniverses + 1];
+      map.points = new int[numPoints];
+      ints.get(map.universes);
+      ints.get(map.offsets);
+      ints.get(map.points);
+      return map;
+    } catch (IOException ioex) {
+      logger.log(Level.WARNING, "Unable to load universe map " + filename, ioex);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package art.lookingup;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Offline tool that compiles the Pixlite universe map and writes the model and wiring exports used to
+ * verify it: lxpoints.ply, panelpoints_A*.csv, points_panel_*.csv and wiring_panel_*.txt for the
+ * PixelMapping sketch and sixteenth_*.html.  ConeDown itself writes none of these.  Run it
+ * from the same directory ConeDown runs in whenever the panels or the wiring change:
+ * <pre>
+ *   java -cp conedown-1.0.0-jar-with-dependencies.jar art.lookingup.UniverseMapCompiler
+ * </pre>
+ */
+public class UniverseMapCompiler {
+  private static final Logger logger = Logger.getLogger(UniverseMapCompiler.class.getName());
+
+  public static void main(String[] args) throws IOException {
+    ConeDownModel model = ConeDownModel.createModel();
+    ConeDownModel.exportPLY(model.getPoints());
+    for (Panel panel : ConeDownModel.allPanels) {
+      if (panel.panelType == Panel.PanelType.A1 || panel.panelType == Panel.PanelType.A2)
+        ConeDownModel.exportPanelPoints(panel);
+    }
+    UniverseMap universeMap = Output.compilePixliteUniverseMap(true);
+    universeMap.save(Output.UNIVERSE_MAP_FILENAME, Output.pixliteWiringKey());
+    logger.info("Wrote " + Output.UNIVERSE_MAP_FILENAME + ": " + universeMap.size() + " universes, " +
+        universeMap.points.length + " points");
+  }
+}
@@ -0,0 +1,734 @@
+package art.lookingup;
+
+import art.lookingup.colors.Colors;
+import heronarts.lx.LX;
+import heronarts.lx.output.LXOutput;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ArtNet or E1.31 output for a compiled {@link UniverseMap}.  Each universe gets one preallocated direct
+ * ByteBuffer with its header written once at construction by the {@link UniverseFormat} of the
+ * {@link Controller} it is sent to.  Every frame we only fill in the DMX payloads from the colors buffer
+ * and write the packets out, so nothing is allocated on the engine thread.
+ * <p>
+ * Each controller has its own DatagramChannel.  With more than one controller the universes of each
+ * controller are written in parallel by one transmit thread per extra controller, and the sync packets
+ * only go out once every controller has been sent the whole frame, so they all latch the same frame.</p>
+ * <p>
+ * In threaded mode the engine thread only copies the finished frame into a triple buffer and a
+ * dedicated sender thread encodes and transmits the newest frame.  Frames that are overwritten before
+ * the sender gets to them are counted in {@link #getFramesDropped()}.</p>
+ * <p>
+ * With diff sending enabled a universe is only retransmitted when its payload changed since the last
+ * packet sent for it, or when the keepalive interval has passed.  Per-universe skip counts are logged
+ * periodically.</p>
+ * <p>
+ * Colors are corrected while packing with the fused per-channel tables from {@link Gamma#OUTPUT_LUT},
+ * which fold gamma, white point and brightness into a single lookup per channel.  With dithering
+ * enabled the 8.8 fixed point tables are used instead and the fraction lost when truncating each channel
+ * to 8 bits is carried over to that channel's next frame, so slow fades near black move through the
+ * in-between levels instead of stepping.</p>
+ * <p>
+ * The payloads actually transmitted can be captured with a {@link FrameRecorder}, see
+ * {@link #setRecording(boolean, String)}.</p>
+ * <p>
+ * With the pacer enabled the sender thread transmits at a fixed rate of its own instead of once per
+ * engine frame.  Each tick sends the newest published frame, or optionally a blend between the two
+ * newest frames based on how far the tick is into the engine's frame interval, and the sync packet goes
+ * out on the pacer's clock.  The pacer always runs the sender thread.</p>
+ */
+public class UniverseOutput extends LXOutput {
+  private static final Logger logger = Logger.getLogger(UniverseOutput.class.getName());
+
+  // Engine side of a send, and the packet writes wherever they run.
+  private static final FrameProfiler.Histogram sendTimes = FrameProfiler.histogram("UniverseOutput.onSend");
+  private static final FrameProfiler.Histogram transmitTimes = FrameProfiler.histogram("UniverseOutput.transmit");
+
+  public final UniverseMap map;
+  public final Controller[] controllers;
+
+  private final InetSocketAddress[] addresses;
+  private final ByteBuffer[] packets;
+  // Offset of the DMX payload in each universe's packet.
+  private final int[] payloadOffsets;
+
+  // Parallel transmit, one worker per controller after the first.  The fields below are handed to the
+  // workers through their volatile generation counter.
+  private final TransmitWorker[] workers;
+  private final AtomicInteger transmitsPending = new AtomicInteger();
+  private Thread transmitThread;
+  private long transmitNanos;
+  private boolean transmitDiff;
+  private long transmitKeepalive;
+
+  /**
+   * One destination controller.
+   */
+  public static class Controller {
+    public final String name;
+    public final UniverseFormat format;
+    private final InetSocketAddress[] syncAddresses;
+    private ByteBuffer syncPacket = null;
+    private DatagramChannel channel;
+    // Indices into the map of the universes sent to this controller.
+    private int[] universes;
+    private int failureCount = 0;
+
+    /**
+     * @param format The packet format used for this controller.
+     * @param syncAddresses The destinations for the sync packet sent after each frame, or null for no sync.
+     */
+    public Controller(String name, UniverseFormat format, InetSocketAddress[] syncAddresses) {
+      this.name = name;
+      this.format = format;
+      this.syncAddresses = syncAddresses == null ? new InetSocketAddress[0] : syncAddresses;
+      if (syncAddresses != null) {
+        syncPacket = ByteBuffer.allocateDirect(format.syncLength());
+        format.writeSync(syncPacket);
+      }
+    }
+  }
+
+  // Diff sending.  changed[u] is set by encode() when any payload byte differs from the previous
+  // frame, which is still sitting in the packet buffer.
+  private static final long SKIP_REPORT_INTERVAL_NS = TimeUnit.SECONDS.toNanos(60);
+  private volatile boolean diffEnabled = false;
+  private volatile long keepaliveNanos = TimeUnit.SECONDS.toNanos(1);
+  private final boolean[] changed;
+  private final long[] lastSentNanos;
+  private final long[] sentCount;
+  private final long[] skippedCount;
+  private long lastSkipReportNanos = System.nanoTime();
+
+  // Triple buffer for handing frames from the engine thread to the sender thread.  The engine owns
+  // backIndex, the sender owns frontIndex and the middle slot is exchanged atomically.  DIRTY marks a
+  // middle slot that has been published but not yet picked up by the sender.
+  private static final int DIRTY = 4;
+  private static final long DROP_REPORT_INTERVAL_NS = TimeUnit.SECONDS.toNanos(10);
+  private final int[][] frames = new int[3][];
+  private final int[] frameBrightness = new int[3];
+  private final long[] frameNanos = new long[3];
+  private final AtomicInteger middleIndex = new AtomicInteger(2);
+  private int backIndex = 0;
+  private int frontIndex = 1;
+  private volatile long framesDropped = 0;
+  private volatile boolean threadedRequested = false;
+  private SenderThread senderThread = null;
+
+  // Output pacer, see setPacer().  The last spin window is spent busy waiting for a precise tick.
+  private static final long PACER_SPIN_NS = TimeUnit.MICROSECONDS.toNanos(500);
+  private volatile double pacerHz = 0;
+  private volatile boolean pacerBlend = false;
+  // Owned by the sender thread.
+  private int[] pacerPrevious = null;
+  private long pacerPreviousNanos = 0;
+  private int[] pacerBlended = null;
+
+  // Temporal dithering.  One byte of accumulated error per channel of every mapped point, indexed like
+  // map.points.
+  private volatile boolean ditherEnabled = false;
+  private final byte[] ditherError;
+
+  private volatile FrameRecorder recorder = null;
+
+  /**
+   * @param map The compiled universe map.
+   * @param ipAddress The ArtNet destination.
+   * @param port The ArtNet port, normally 6454.
+   * @param sync Whether to follow each frame with an ArtSync packet.
+   */
+  public UniverseOutput(LX lx, UniverseMap map, String ipAddress, int port, boolean sync) throws IOException {
+    this(lx, map, sameAddress(map, new InetSocketAddress(ipAddress, port)), sync);
+  }
+
+  /**
+   * ArtNet to one controller per distinct address.
+   *
+   * @param map The compiled universe map.
+   * @param addresses The ArtNet destination of each universe in the map.
+   * @param sync Whether to follow each frame with an ArtSync packet to every destination.
+   */
+  public UniverseOutput(LX lx, UniverseMap map, InetSocketAddress[] addresses, boolean sync) throws IOException {
+    this(lx, map, addresses, artNetControllers(distinct(addresses), sync), indicesOf(distinct(addresses), addresses));
+  }
+
+  /**
+   * A single controller.
+   *
+   * @param map The compiled universe map.
+   * @param format The packet format.
+   * @param addresses The destination of each universe in the map.
+   * @param syncAddresses The destinations for the sync packet sent after each frame, or null for no sync.
+   */
+  public UniverseOutput(LX lx, UniverseMap map, UniverseFormat format, InetSocketAddress[] addresses,
+                        InetSocketAddress[] syncAddresses) throws IOException {
+    this(lx, map, addresses, new Controller[] {new Controller("controller", format, syncAddresses)},
+        new int[map.size()]);
+  }
+
+  /**
+   * @param map The compiled universe map.
+   * @param addresses The destination of each universe in the map.
+   * @param controllers The controllers.
+   * @param controllerOf The index into controllers of each universe in the map.
+   */
+  public UniverseOutput(LX lx, UniverseMap map, InetSocketAddress[] addresses, Controller[] controllers,
+                        int[] controllerOf) throws IOException {
+    super(lx);
+    this.map = map;
+    this.addresses = addresses;
+    this.controllers = controllers;
+
+    packets = new ByteBuffer[map.size()];
+    payloadOffsets = new int[map.size()];
+    for (int u = 0; u < map.size(); u++) {
+      UniverseFormat format = controllers[controllerOf[u]].format;
+      int dataLength = format.dataLength(map.pointCount(u));
+      ByteBuffer packet = ByteBuffer.allocateDirect(format.headerLength() + dataLength);
+      format.writeHeader(packet, map.universes[u], dataLength);
+      packets[u] = packet;
+      payloadOffsets[u] = format.headerLength();
+    }
+    for (int c = 0; c < controllers.length; c++) {
+      int count = 0;
+      for (int u = 0; u < map.size(); u++) {
+        if (controllerOf[u] == c) count++;
+      }
+      controllers[c].universes = new int[count];
+      count = 0;
+      for (int u = 0; u < map.size(); u++) {
+        if (controllerOf[u] == c) controllers[c].universes[count++] = u;
+      }
+      controllers[c].channel = DatagramChannel.open();
+    }
+    changed = new boolean[map.size()];
+    lastSentNanos = new long[map.size()];
+    sentCount = new long[map.size()];
+    skippedCount = new long[map.size()];
+    ditherError = new byte[map.points.length * 3];
+
+    workers = new TransmitWorker[controllers.length - 1];
+    for (int w = 0; w < workers.length; w++) {
+      workers[w] = new TransmitWorker(controllers[w + 1]);
+      workers[w].start();
+    }
+  }
+
+  static InetSocketAddress[] distinct(InetSocketAddress[] addresses) {
+    List<InetSocketAddress> distinct = new ArrayList<InetSocketAddress>();
+    for (InetSocketAddress address : addresses) {
+      if (!distinct.contains(address)) distinct.add(address);
+    }
+    return distinct.toArray(new InetSocketAddress[0]);
+  }
+
+  static int[] indicesOf(InetSocketAddress[] distinct, InetSocketAddress[] addresses) {
+    List<InetSocketAddress> list = Arrays.asList(distinct);
+    int[] indices = new int[addresses.length];
+    for (int u = 0; u < addresses.length; u++) {
+      indices[u] = list.indexOf(addresses[u]);
+    }
+    return indices;
+  }
+
+  static Controller[] artNetControllers(InetSocketAddress[] distinct, boolean sync) {
+    Controller[] controllers = new Controller[distinct.length];
+    for (int c = 0; c < distinct.length; c++) {
+      controllers[c] = new Controller(distinct[c].toString(), new ArtNetFormat(),
+          sync ? new InetSocketAddress[] {distinct[c]} : null);
+    }
+    return controllers;
+  }
+
+  static InetSocketAddress[] sameAddress(UniverseMap map, InetSocketAddress address) {
+    InetSocketAddress[] addresses = new InetSocketAddress[map.size()];
+    Arrays.fill(addresses, address);
+    return addresses;
+  }
+
+  /**
+   * Requests that frames be sent from a dedicated thread.  The change takes effect on the next frame
+   * so that the engine thread and the sender thread never encode at the same time.
+   */
+  public void setThreaded(boolean threaded) {
+    threadedRequested = threaded;
+  }
+
+  public boolean isThreaded() {
+    return senderThread != null;
+  }
+
+  /**
+   * Transmits at a fixed rate from the sender thread, independent of the engine frame rate.
+   *
+   * @param hz The output rate, or 0 to send once per engine frame.
+   * @param blend Blend between the two newest frames instead of resending the newest.
+   */
+  public void setPacer(double hz, boolean blend) {
+    pacerBlend = blend;
+    pacerHz = hz;
+    LockSupport.unpark(senderThread);
+  }
+
+  /**
+   * Only retransmit universes whose payload changed, plus a keepalive packet every keepaliveMs so that
+   * controllers don't time out on static universes.
+   */
+  public void setDiffSend(boolean enabled, double keepaliveMs) {
+    keepaliveNanos = (long) (keepaliveMs * 1000000.0);
+    diffEnabled = enabled;
+  }
+
+  public void setDither(boolean enabled) {
+    ditherEnabled = enabled;
+  }
+
+  /**
+   * Starts or stops capturing every transmitted frame to prefix-*.cdcap segment files.
+   */
+  public void setRecording(boolean recording, String prefix) {
+    FrameRecorder current = recorder;
+    if (recording && current == null) {
+      try {
+        recorder = new FrameRecorder(prefix, map);
+      } catch (IOException ioex) {
+        logger.log(Level.SEVERE, "Unable to start recording " + prefix, ioex);
+      }
+    } else if (!recording && current != null) {
+      recorder = null;
+      current.close();
+    }
+  }
+
+  public boolean isRecording() {
+    return recorder != null;
+  }
+
+  /**
+   * Number of frames the engine published that were replaced by a newer frame before the sender thread
+   * could transmit them.
+   */
+  public long getFramesDropped() {
+    return framesDropped;
+  }
+
+  @Override
+  protected void onSend(int[] colors, double brightness) {
+    long start = System.nanoTime();
+    int b = (int) Math.round(brightness * 255);
+    boolean threaded = threadedRequested || pacerHz > 0;
+    if (threaded != (senderThread != null)) {
+      if (threaded) {
+        startSender();
+      } else {
+        stopSender();
+      }
+    }
+    if (senderThread != null) {
+      publish(colors, b);
+    } else {
+      encode(colors, b);
+      transmit();
+    }
+    sendTimes.recordSince(start);
+  }
+
+  /**
+   * Unused, brightness and gamma are applied by {@link #onSend(int[], double)} through the output
+   * tables instead of LXOutput's single gamma table.
+   */
+  @Override
+  protected void onSend(int[] colors, byte[] glut) {
+    onSend(colors, 1.0);
+  }
+
+  /**
+   * Copies the frame into the back buffer and swaps it into the middle slot for the sender thread.
+   */
+  private void publish(int[] colors, int brightness) {
+    int[] frame = frames[backIndex];
+    if (frame == null || frame.length != colors.length) {
+      frame = new int[colors.length];
+      frames[backIndex] = frame;
+    }
+    System.arraycopy(colors, 0, frame, 0, colors.length);
+    frameBrightness[backIndex] = brightness;
+    frameNanos[backIndex] = System.nanoTime();
+    int previous = middleIndex.getAndSet(backIndex | DIRTY);
+    if ((previous & DIRTY) != 0) {
+      framesDropped++;
+    }
+    backIndex = previous & ~DIRTY;
+    LockSupport.unpark(senderThread);
+  }
+
+  private void startSender() {
+    senderThread = new SenderThread();
+    senderThread.start();
+  }
+
+  private void stopSender() {
+    SenderThread thread = senderThread;
+    senderThread = null;
+    thread.running = false;
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException iex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private class SenderThread extends Thread {
+    volatile boolean running = true;
+
+    SenderThread() {
+      super("UniverseOutput sender");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      long lastReportNanos = System.nanoTime();
+      long lastReportDropped = framesDropped;
+      long nextTick = System.nanoTime();
+      while (running) {
+        double hz = pacerHz;
+        if (hz > 0) {
+          nextTick += (long) (1e9 / hz);
+          // If we fell behind, start over from now rather than bursting to catch up.
+          if (nextTick < System.nanoTime()) nextTick = System.nanoTime();
+          if (!waitUntil(nextTick)) continue;
+          sendPaced();
+        } else {
+          if ((middleIndex.get() & DIRTY) == 0) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            continue;
+          }
+          frontIndex = middleIndex.getAndSet(frontIndex) & ~DIRTY;
+          encode(frames[frontIndex], frameBrightness[frontIndex]);
+          transmit();
+          nextTick = System.nanoTime();
+        }
+
+        long now = System.nanoTime();
+        if (now - lastReportNanos > DROP_REPORT_INTERVAL_NS) {
+          long dropped = framesDropped;
+          if (dropped != lastReportDropped) {
+            logger.info("Frames dropped at output: " + (dropped - lastReportDropped) +
+                " in last " + TimeUnit.NANOSECONDS.toSeconds(now - lastReportNanos) + "s, " + dropped + " total");
+          }
+          lastReportNanos = now;
+          lastReportDropped = dropped;
+        }
+      }
+    }
+
+    /**
+     * Parks until just before the deadline and spins the rest of the way.
+     *
+     * @return false if the wait was cut short because the sender is stopping or the pacer was turned off.
+     */
+    private boolean waitUntil(long deadline) {
+      long remaining;
+      while ((remaining = deadline - System.nanoTime()) > PACER_SPIN_NS) {
+        LockSupport.parkNanos(this, remaining - PACER_SPIN_NS);
+        if (!running || pacerHz <= 0) return false;
+      }
+      while (deadline - System.nanoTime() > 0) {
+        // Spin.
+      }
+      return true;
+    }
+  }
+
+  /**
+   * One pacer tick.  Picks up the newest published frame, if any, and sends it or its blend with the
+   * frame before it.
+   */
+  private void sendPaced() {
+    if ((middleIndex.get() & DIRTY) != 0) {
+      int[] current = frames[frontIndex];
+      if (current != null) {
+        if (pacerPrevious == null || pacerPrevious.length != current.length) {
+          pacerPrevious = new int[current.length];
+        }
+        System.arraycopy(current, 0, pacerPrevious, 0, current.length);
+        pacerPreviousNanos = frameNanos[frontIndex];
+      }
+      frontIndex = middleIndex.getAndSet(frontIndex) & ~DIRTY;
+    }
+    int[] frame = frames[frontIndex];
+    if (frame == null) return;  // Nothing published yet.
+
+    if (pacerBlend && pacerPrevious != null && pacerPrevious.length == frame.length) {
+      long interval = frameNanos[frontIndex] - pacerPreviousNanos;
+      long elapsed = System.nanoTime() - frameNanos[frontIndex];
+      int weight = interval <= 0 ? 256 : (int) Math.min(256, elapsed * 256 / interval);
+      if (pacerBlended == null || pacerBlended.length != frame.length) {
+        pacerBlended = new int[frame.length];
+      }
+      Colors.lerp(pacerPrevious, frame, weight, pacerBlended);
+      encode(pacerBlended, frameBrightness[frontIndex]);
+    } else {
+      encode(frame, frameBrightness[frontIndex]);
+    }
+    transmit();
+  }
+
+  /**
+   * Packs the colors for every universe into the DMX payloads, correcting each channel through its
+   * lookup table.
+   *
+   * @param brightness The output brightness, 0-255.
+   */
+  protected void encode(int[] colors, int brightness) {
+    if (ditherEnabled) {
+      encodeDithered(colors, brightness);
+      return;
+    }
+    byte[][][] lut = Gamma.OUTPUT_LUT;
+    final byte[] red = lut[0][brightness];
+    final byte[] green = lut[1][brightness];
+    final byte[] blue = lut[2][brightness];
+    final int[] points = map.points;
+    final int[] offsets = map.offsets;
+    for (int u = 0; u < packets.length; u++) {
+      ByteBuffer packet = packets[u];
+      int pos = payloadOffsets[u];
+      int end = offsets[u + 1];
+      int diff = 0;
+      for (int i = offsets[u]; i < end; i++) {
+        int color = colors[points[i]];
+        byte r = red[(color >> 16) & 0xff];
+        byte g = green[(color >> 8) & 0xff];
+        byte b = blue[color & 0xff];
+        diff |= (packet.get(pos) ^ r) | (packet.get(pos + 1) ^ g) | (packet.get(pos + 2) ^ b);
+        packet.put(pos, r);
+        packet.put(pos + 1, g);
+        packet.put(pos + 2, b);
+        pos += 3;
+      }
+      changed[u] |= diff != 0;
+    }
+  }
+
+  private void encodeDithered(int[] colors, int brightness) {
+    char[][][] lut = Gamma.OUTPUT_LUT16;
+    final char[] red = lut[0][brightness];
+    final char[] green = lut[1][brightness];
+    final char[] blue = lut[2][brightness];
+    final int[] points = map.points;
+    final int[] offsets = map.offsets;
+    final byte[] error = ditherError;
+    for (int u = 0; u < packets.length; u++) {
+      ByteBuffer packet = packets[u];
+      int pos = payloadOffsets[u];
+      int end = offsets[u + 1];
+      int diff = 0;
+      for (int i = offsets[u]; i < end; i++) {
+        int color = colors[points[i]];
+        int e = i * 3;
+        int r = red[(color >> 16) & 0xff] + (error[e] & 0xff);
+        int g = green[(color >> 8) & 0xff] + (error[e + 1] & 0xff);
+        int b = blue[color & 0xff] + (error[e + 2] & 0xff);
+        error[e] = (byte) r;
+        error[e + 1] = (byte) g;
+        error[e + 2] = (byte) b;
+        byte rb = (byte) (r >> 8);
+        byte gb = (byte) (g >> 8);
+        byte bb = (byte) (b >> 8);
+        diff |= (packet.get(pos) ^ rb) | (packet.get(pos + 1) ^ gb) | (packet.get(pos + 2) ^ bb);
+        packet.put(pos, rb);
+        packet.put(pos + 1, gb);
+        packet.put(pos + 2, bb);
+        pos += 3;
+      }
+      changed[u] |= diff != 0;
+    }
+  }
+
+  /**
+   * Writes every universe packet, followed by the sync packets if enabled.  In diff mode unchanged
+   * universes are skipped until their keepalive is due.
+   */
+  protected void transmit() {
+    long now = System.nanoTime();
+    FrameRecorder frameRecorder = recorder;
+    if (frameRecorder != null) {
+      frameRecorder.record(packets, payloadOffsets, now);
+    }
+    boolean diff = diffEnabled;
+    long keepalive = keepaliveNanos;
+    if (workers.length == 0) {
+      transmitUniverses(controllers[0], now, diff, keepalive);
+    } else {
+      transmitThread = Thread.currentThread();
+      transmitNanos = now;
+      transmitDiff = diff;
+      transmitKeepalive = keepalive;
+      transmitsPending.set(workers.length);
+      for (TransmitWorker worker : workers) {
+        worker.go();
+      }
+      transmitUniverses(controllers[0], now, diff, keepalive);
+      // Every controller has the whole frame before any of them gets a sync packet.
+      while (transmitsPending.get() > 0) {
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+      }
+    }
+    for (Controller controller : controllers) {
+      transmitSync(controller);
+    }
+    if (diff && now - lastSkipReportNanos > SKIP_REPORT_INTERVAL_NS) {
+      logSkipStats();
+      lastSkipReportNanos = now;
+    }
+    transmitTimes.recordSince(now);
+  }
+
+  private void transmitUniverses(Controller controller, long now, boolean diff, long keepalive) {
+    InetSocketAddress address = null;
+    try {
+      for (int u : controller.universes) {
+        if (diff && !changed[u] && now - lastSentNanos[u] < keepalive) {
+          skippedCount[u]++;
+          continue;
+        }
+        ByteBuffer packet = packets[u];
+        packet.clear();
+        controller.format.beforeSend(packet, false);
+        address = addresses[u];
+        controller.channel.send(packet, address);
+        changed[u] = false;
+        lastSentNanos[u] = now;
+        sentCount[u]++;
+      }
+      if (controller.failureCount > 0) {
+        logger.info("Recovered output connectivity to " + controller.name + " after " + controller.failureCount +
+            " failed frames");
+        controller.failureCount = 0;
+      }
+    } catch (IOException ioex) {
+      if (controller.failureCount == 0) {
+        logger.log(Level.WARNING, "IOException sending to " + address, ioex);
+      }
+      controller.failureCount++;
+    }
+  }
+
+  private void transmitSync(Controller controller) {
+    if (controller.syncPacket == null) return;
+    try {
+      for (InetSocketAddress syncAddress : controller.syncAddresses) {
+        controller.syncPacket.clear();
+        controller.format.beforeSend(controller.syncPacket, true);
+        controller.channel.send(controller.syncPacket, syncAddress);
+      }
+    } catch (IOException ioex) {
+      // Logged along with the data packets, which are failing too.
+      controller.failureCount++;
+    }
+  }
+
+  /**
+   * Sends one controller's universes on its own thread, see {@link #transmit()}.
+   */
+  private class TransmitWorker extends Thread {
+    private final Controller controller;
+    volatile boolean running = true;
+    private volatile long generation = 0;
+    private long done = 0;
+
+    TransmitWorker(Controller controller) {
+      super("UniverseOutput transmit " + controller.name);
+      this.controller = controller;
+      setDaemon(true);
+    }
+
+    void go() {
+      generation = generation + 1;
+      LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        if (generation == done) {
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+          continue;
+        }
+        done = generation;
+        transmitUniverses(controller, transmitNanos, transmitDiff, transmitKeepalive);
+        if (transmitsPending.decrementAndGet() == 0) {
+          LockSupport.unpark(transmitThread);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends raw payloads, one per universe in map order, through the normal transmit path.  Used by
+   * {@link FrameReplay}.
+   */
+  void transmitPayloads(byte[][] payloads) {
+    for (int u = 0; u < packets.length; u++) {
+      ByteBuffer packet = packets[u];
+      packet.clear();
+      packet.position(payloadOffsets[u]);
+      packet.put(payloads[u], 0, Math.min(payloads[u].length, packet.remaining()));
+      changed[u] = true;
+    }
+    transmit();
+  }
+
+  private void logSkipStats() {
+    StringBuilder sb = new StringBuilder("Universe skip stats (sent/skipped):");
+    for (int u = 0; u < packets.length; u++) {
+      sb.append(" ").append(map.universes[u]).append("=").append(sentCount[u]).append("/").append(skippedCount[u]);
+      sentCount[u] = 0;
+      skippedCount[u] = 0;
+    }
+    logger.info(sb.toString());
+  }
+
+  @Override
+  public void dispose() {
+    if (senderThread != null) {
+      stopSender();
+    }
+    setRecording(false, null);
+    for (TransmitWorker worker : workers) {
+      worker.running = false;
+      LockSupport.unpark(worker);
+    }
+    // A worker still sending its last frame would fail on a closed channel.
+    for (TransmitWorker worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException iex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    for (Controller controller : controllers) {
+      try {
+        controller.channel.close();
+      } catch (IOException ioex) {
+        logger.log(Level.WARNING, "Error closing output channel for " + controller.name, ioex);
+      }
+    }
+    super.dispose();
+  }
+}
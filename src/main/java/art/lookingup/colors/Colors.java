@@ -252,4 +252,18 @@ public final class Colors {
     return Color.RGBtoHSB(r, g, b, hsb);
   }
 
+  /**
+   * Blends two buffers of ARGB colors, all four channels at once: out = a + (b - a) * t / 256, with t
+   * from 0 to 256.
+   */
+  public static void lerp(int[] a, int[] b, int t, int[] out) {
+    int s = 256 - t;
+    for (int i = 0; i < out.length; i++) {
+      int ca = a[i];
+      int cb = b[i];
+      int rb = ((ca & 0xff00ff) * s + (cb & 0xff00ff) * t) >>> 8;
+      int ag = ((ca >>> 8) & 0xff00ff) * s + ((cb >>> 8) & 0xff00ff) * t;
+      out[i] = (rb & 0xff00ff) | (ag & 0xff00ff00);
+    }
+  }
 }
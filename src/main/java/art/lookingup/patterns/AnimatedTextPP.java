@@ -5,6 +5,7 @@ import static processing.core.PApplet.round;
 
 import art.lookingup.RainbowOSC;
 import art.lookingup.ConeDown;
+import art.lookingup.GraphicsPool;
 import heronarts.lx.LX;
 import heronarts.lx.LXCategory;
 import heronarts.lx.color.LXColor;
@@ -153,10 +154,16 @@ public class AnimatedTextPP extends PGPixelPerfect implements CustomDeviceUI, Un
 
   @Override
   protected void tearDown() {
-    if (textImage != null) {
-      textImage.dispose();
-      textImage = null;
-    }
+    GraphicsPool.release(textImage);
+    textImage = null;
+    GraphicsPool.release(multiplyImage);
+    multiplyImage = null;
+  }
+
+  @Override
+  protected void releaseGraphics() {
+    tearDown();
+    super.releaseGraphics();
   }
 
   @Override
@@ -210,9 +217,10 @@ public class AnimatedTextPP extends PGPixelPerfect implements CustomDeviceUI, Un
       }
     }
 
-    if (textImage != null) {
-      textImage.dispose();
-    }
+    GraphicsPool.release(textImage);
+    textImage = null;
+    GraphicsPool.release(multiplyImage);
+    multiplyImage = null;
 
     if (pg != null) {
       if (font != null) {
@@ -221,8 +229,7 @@ public class AnimatedTextPP extends PGPixelPerfect implements CustomDeviceUI, Un
         pg.textSize(fontSize);
       }
     }
-    textImage = ConeDown.pApplet.createGraphics(ceil(pg.textWidth(label)), renderHeight);
-    textImage.noSmooth();
+    textImage = GraphicsPool.acquire(ceil(pg.textWidth(label)), renderHeight, PConstants.JAVA2D, 0);
     textImage.beginDraw();
     textImage.background(0, 0);
     textImage.stroke(255);
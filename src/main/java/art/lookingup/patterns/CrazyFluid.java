@@ -139,6 +139,12 @@ public class CrazyFluid extends PGPixelPerfect {
     pg_obstacles.endDraw();
   }
 
+  // The fluid is simulated on a P2D surface, which must stay on the GL thread.
+  @Override
+  protected boolean canDrawAsync() {
+    return false;
+  }
+
   public void draw(double deltaDrawMs) {
     pg.background(0);
     fluid.addObstacles(pg_obstacles);
@@ -3,6 +3,7 @@ package art.lookingup.patterns;
 import art.lookingup.CXPoint;
 import art.lookingup.ConeDown;
 import art.lookingup.ConeDownModel;
+import art.lookingup.FrameProfiler;
 import art.lookingup.Panel;
 import art.lookingup.ui.UIFirmata;
 import heronarts.lx.LX;
@@ -16,6 +17,7 @@ import heronarts.lx.parameter.CompoundParameter;
 
 @LXCategory(LXCategory.TEXTURE)
 public class DanceTileEfx extends LXEffect {
+  private final FrameProfiler.Histogram runTimes = FrameProfiler.histogram("DanceTileEfx.run");
 
   public DanceTileEfx(LX lx) {
     super(lx);
@@ -27,6 +29,7 @@ public class DanceTileEfx extends LXEffect {
 
   @Override
   public void run(double deltaMs, double amount) {
+      long start = System.nanoTime();
       for (LXPoint point : ConeDownModel.conePoints) {
         this.colors[point.index] = LXColor.rgba(0, 0, 0, 0);
       }
@@ -45,6 +48,7 @@ public class DanceTileEfx extends LXEffect {
         }
 
       }
+      runTimes.recordSince(start);
   }
 
   @Override
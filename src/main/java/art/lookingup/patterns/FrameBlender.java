@@ -0,0 +1,48 @@
+package art.lookingup.patterns;
+
+import art.lookingup.colors.Colors;
+
+/**
+ * Keeps the last two sampled point buffers of a pattern so that ticks between two frames can show a
+ * blend of them.  Shows one frame behind: a new frame is blended in as the fraction runs from 0 to 1,
+ * and is fully shown just as the next one arrives.
+ */
+class FrameBlender {
+  private int[] previous;
+  private int[] current;
+
+  /** The latest buffer passed to {@link #push(int[], boolean)}, or null before the first. */
+  int[] current() {
+    return current;
+  }
+
+  /**
+   * Stores a sampled buffer.
+   *
+   * @param newFrame True if colors came from a new frame, which moves the current one to previous.
+   *                 False if it is the current frame sampled again, for instance with new settings.
+   */
+  void push(int[] colors, boolean newFrame) {
+    if (current == null || current.length != colors.length) {
+      previous = new int[colors.length];
+      current = new int[colors.length];
+      System.arraycopy(colors, 0, previous, 0, colors.length);
+    } else if (newFrame) {
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    System.arraycopy(colors, 0, current, 0, colors.length);
+  }
+
+  /**
+   * Writes previous blended toward current into colors.
+   *
+   * @param fraction How far from previous to current, from 0 to 1.
+   */
+  void blend(double fraction, int[] colors) {
+    int t = (int) (fraction * 256);
+    t = Math.max(0, Math.min(256, t));
+    Colors.lerp(previous, current, t, colors);
+  }
+}
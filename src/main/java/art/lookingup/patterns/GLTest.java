@@ -17,6 +17,12 @@ public class GLTest extends PGPixelPerfect implements CustomDeviceUI {
     super(lx, "");
   }
 
+  // Copies a GL render made by the UI.
+  @Override
+  protected boolean canDrawAsync() {
+    return false;
+  }
+
   public void draw(double drawDeltaMs) {
     if (glRenderer.renderBuffer != null)
       pg.image(glRenderer.renderBuffer, 0, 0);
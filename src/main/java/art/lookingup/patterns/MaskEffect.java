@@ -1,6 +1,7 @@
 package art.lookingup.patterns;
 
 import art.lookingup.ConeDownModel;
+import art.lookingup.FrameProfiler;
 import heronarts.lx.LX;
 import heronarts.lx.LXCategory;
 import heronarts.lx.LXEffect;
@@ -21,6 +22,8 @@ public class MaskEffect extends LXEffect {
       new BooleanParameter("dance", true)
           .setDescription("Render to dancefloor");
 
+  private final FrameProfiler.Histogram runTimes = FrameProfiler.histogram("MaskEffect.run");
+
 
   public MaskEffect(LX lx) {
     super(lx);
@@ -35,6 +38,7 @@ public class MaskEffect extends LXEffect {
 
   @Override
   public void run(double deltaMs, double amount) {
+    long start = System.nanoTime();
     if (!cone.isOn()) {
       for (LXPoint point : ConeDownModel.conePoints) {
         this.colors[point.index] = LXColor.rgba(0, 0, 0, 0);
@@ -50,6 +54,7 @@ public class MaskEffect extends LXEffect {
         this.colors[point.index] = LXColor.rgba(0, 0, 0, 0);
       }
     }
+    runTimes.recordSince(start);
   }
 
   @Override
@@ -6,18 +6,35 @@ import static processing.core.PConstants.P3D;
 
 import art.lookingup.ConeDown;
 import art.lookingup.ConeDownModel;
+import art.lookingup.FrameProfiler;
+import art.lookingup.GraphicsPool;
 import art.lookingup.Projection;
+import art.lookingup.ReconstructionFilter;
 import com.google.common.annotations.Beta;
 import heronarts.lx.LX;
 import heronarts.lx.LXPattern;
 import heronarts.lx.parameter.*;
 
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import processing.core.PGraphics;
+import processing.core.PImage;
 
 /** Abstract base class for all Processing PGraphics drawing and mapping to the Rainbow. */
 abstract class PGBase extends RPattern {
+  private static final Logger logger = Logger.getLogger(PGBase.class.getName());
+
+  // Marks the middle snapshot as drawn but not yet picked up by the engine.
+  private static final int FRESH = 4;
+
   public final CompoundParameter fpsKnob =
       new CompoundParameter("Fps", GLOBAL_FRAME_RATE, 0.0, GLOBAL_FRAME_RATE + 10)
           .setDescription("Controls the frames per second.");
@@ -26,6 +43,15 @@ abstract class PGBase extends RPattern {
       new DiscreteParameter("Tgt", 0, 0, 6);
   public final DiscreteParameter superSampling =
       new DiscreteParameter("Super", ConeDown.DEFAULT_SUPER_SAMPLING, ConeDown.MIN_SUPER_SAMPLING, ConeDown.MAX_SUPER_SAMPLING + 1);
+  public final EnumParameter<ReconstructionFilter> filter =
+      new EnumParameter<ReconstructionFilter>("Filter", ReconstructionFilter.BOX)
+          .setDescription("Reconstruction filter used to sample the image at the LEDs.");
+  public final BooleanParameter smooth =
+      new BooleanParameter("Smooth", false)
+          .setDescription("Blend between the last two frames on ticks that do not draw.");
+  public final BooleanParameter asyncDraw =
+      new BooleanParameter("Async", false)
+          .setDescription("Draw on a separate thread, the engine samples the latest finished frame.");
 
   protected PGraphics pg;
 
@@ -33,10 +59,48 @@ abstract class PGBase extends RPattern {
   protected int previousFrame = -1;
   protected double deltaDrawMs = 0.0;
   protected String drawMode = "";
+  // The size of pg.  Set with pgLock held by the thread about to draw, from the size updateParams
+  // published, so draw() sees the same values for the whole frame.
   protected int renderWidth = 0;
   protected int renderHeight = 0;
   protected Projection projection;
 
+  // Set when pg holds an image that has not been sampled to the points yet.
+  private boolean frameDirty = true;
+  // Set when that image is a newly drawn frame rather than the last one again.
+  private boolean frameDrawn = false;
+  // The colors sampled from the last two drawn images.  The latest is restored on ticks that do
+  // not draw, or blended with the one before when smoothing.
+  private final FrameBlender frames = new FrameBlender();
+  final SamplingMetrics samplingMetrics = new SamplingMetrics();
+  // Lowers the rendered super-sampling below the Super knob while the engine is over budget.
+  final SuperSamplingGovernor governor = new SuperSamplingGovernor(lx, this);
+  private final FrameProfiler.Histogram preDrawTimes = FrameProfiler.histogram(getClass().getSimpleName() + ".preDraw");
+  private final FrameProfiler.Histogram drawTimes = FrameProfiler.histogram(getClass().getSimpleName() + ".draw");
+  private final FrameProfiler.Histogram sampleTimes = FrameProfiler.histogram(getClass().getSimpleName() + ".imageToPoints");
+
+  // Held while pg is drawn, sampled or replaced, so the draw worker and the engine take turns.  The
+  // engine does not wait on it for a frame in progress: a resize while the worker draws is handed
+  // to the worker with its next frame, and async frames are sampled from snapshots.
+  private final Object pgLock = new Object();
+  private ExecutorService drawWorker;
+  private final AtomicBoolean drawPending = new AtomicBoolean(false);
+  // Time the draw worker spent on frames since the last render(), for the governor.
+  private final AtomicLong workerNanos = new AtomicLong(0);
+  // The size updateParams asked for, passed to each frame as it is started.
+  private volatile RenderSize targetSize;
+  // The size pg was allocated at.  Written with pgLock held.
+  private volatile RenderSize size;
+  // Tear down of the last activation, left to its draw worker to run after the frame it was drawing.
+  private CompletableFuture<Void> pendingTearDown;
+  // Triple buffer of finished frames: the worker copies into snapshots[back], the engine samples
+  // snapshots[front], and middle holds the index of the latest finished frame, or'ed with FRESH
+  // until the engine swaps it to the front.
+  private final PImage[] snapshots = new PImage[3];
+  private int back = 0;
+  private final AtomicInteger middle = new AtomicInteger(1);
+  private int front = 2;
+
   /** Indicates whether {@link #setup()} has been called. */
   private boolean setupCalled;
   // TODO: Fix this whole pattern lifecycle thing
@@ -60,14 +124,18 @@ abstract class PGBase extends RPattern {
   public PGBase(LX lx, int width, int height, String drawMode) {
     super(lx);
     this.drawMode = drawMode;
-    renderWidth = width * getSuperSampling();
-    renderHeight = height * getSuperSampling();
-    projection = ConeDown.getProjection(getSuperSampling());
-
-    createPGraphics();
+    projection = ConeDown.getProjection(governor.superSampling(superSampling.getValuei()), filter.getEnum());
+    int ss = projection.factor();
+    targetSize = new RenderSize(width * ss, height * ss, ss);
+    applySize(targetSize);
     addParameter(fpsKnob);
     addParameter(renderTarget);
     addParameter(superSampling);
+    addParameter(filter);
+    addParameter(smooth);
+    if (canDrawAsync()) {
+      addParameter(asyncDraw);
+    }
 
     renderTarget.addListener((LXParameter parameter)->{
 	updateParams();
@@ -78,45 +146,54 @@ abstract class PGBase extends RPattern {
   }
 
   protected void updateParams() {
+      int width = 0;
+      int height = 0;
       int mode = renderTarget.getValuei();
       switch (mode) {
       case 0:  // Default full render.
-	  renderWidth = ConeDownModel.POINTS_WIDE;
-	  renderHeight = ConeDownModel.POINTS_HIGH;
+	  width = ConeDownModel.POINTS_WIDE;
+	  height = ConeDownModel.POINTS_HIGH;
 	  break;
       case 1:
-	  renderWidth = ConeDownModel.dancePointsWide;
-	  renderHeight = ConeDownModel.dancePointsHigh;
+	  width = ConeDownModel.dancePointsWide;
+	  height = ConeDownModel.dancePointsHigh;
 	  break;
       case 2:
-	  renderWidth = ConeDownModel.scoopPointsWide;
-	  renderHeight = ConeDownModel.scoopPointsHigh;
+	  width = ConeDownModel.scoopPointsWide;
+	  height = ConeDownModel.scoopPointsHigh;
 	  break;
       case 3:
-	  renderWidth = ConeDownModel.conePointsWide;
-	  renderHeight = ConeDownModel.conePointsHigh;
+	  width = ConeDownModel.conePointsWide;
+	  height = ConeDownModel.conePointsHigh;
 	  break;
       case 4:  // Scoop + cone
-	  renderWidth = Math.max(ConeDownModel.conePointsWide, ConeDownModel.scoopPointsWide);
-	  renderHeight = ConeDownModel.scoopPointsHigh + ConeDownModel.conePointsHigh;
+	  width = Math.max(ConeDownModel.conePointsWide, ConeDownModel.scoopPointsWide);
+	  height = ConeDownModel.scoopPointsHigh + ConeDownModel.conePointsHigh;
 	  break;
       case 5:  // Dancefloor + scoop
-	  renderWidth = ConeDownModel.scoopPointsWide;
-	  renderHeight = ConeDownModel.scoopPointsHigh + ConeDownModel.dancePointsHigh;
+	  width = ConeDownModel.scoopPointsWide;
+	  height = ConeDownModel.scoopPointsHigh + ConeDownModel.dancePointsHigh;
 	  break;
       }
-      renderWidth *= getSuperSampling();
-      renderHeight *= getSuperSampling();
-      projection = ConeDown.getProjection(getSuperSampling());
-      createPGraphics();
-      
+      projection = ConeDown.getProjection(governor.superSampling(superSampling.getValuei()), filter.getEnum());
+      int ss = projection.factor();
+      targetSize = new RenderSize(width * ss, height * ss, ss);
+      frameDirty = true;
+      // While the worker is drawing into pg, it reallocates it when it starts the next frame.
+      if (!drawPending.get()) {
+        synchronized (pgLock) {
+          applySize(targetSize);
+        }
+      }
   }    
 
   protected void createPGraphics() {
+    // Hand the old size back so flipping between sizes reuses buffers.
+    GraphicsPool.release(pg);
     if (P3D.equals(drawMode) || P2D.equals(drawMode)) {
-      pg = ConeDown.pApplet.createGraphics(renderWidth, renderHeight, drawMode);
+      pg = GraphicsPool.acquire(renderWidth, renderHeight, drawMode);
     } else {
-      pg = ConeDown.pApplet.createGraphics(renderWidth, renderHeight);
+      pg = GraphicsPool.acquire(renderWidth, renderHeight);
     }
     pg.beginDraw();
     pg.endDraw();
@@ -128,17 +205,115 @@ abstract class PGBase extends RPattern {
   @Override
   public void onInactive() {
     setupCalled = false;
-    tearDown();
+    if (drawWorker == null) {
+      finishTearDown();
+    } else {
+      // Let the worker finish the frame in progress and tear down after it, rather than wait here.
+      pendingTearDown = CompletableFuture.runAsync(() -> {
+        try {
+          finishTearDown();
+        } catch (RuntimeException rex) {
+          logger.log(Level.WARNING, "Error tearing down " + getLabel(), rex);
+        }
+      }, drawWorker);
+      drawWorker.shutdown();
+      drawWorker = null;
+    }
+  }
+
+  private void finishTearDown() {
+    synchronized (pgLock) {
+      tearDown();
+    }
+    // Hand the async snapshots back to the pool, and forget any frame not yet picked up.
+    for (int i = 0; i < snapshots.length; i++) {
+      GraphicsPool.release(snapshots[i]);
+      snapshots[i] = null;
+    }
+    middle.getAndUpdate((int m) -> m & ~FRESH);
+  }
+
+  /**
+   * Hands the pattern's pooled buffers back to the {@link GraphicsPool} when it is removed.  A frame or
+   * tear down still running on the draw worker finishes first.
+   */
+  @Override
+  public void dispose() {
+    if (drawWorker != null) {
+      drawWorker.execute(this::disposeGraphics);
+      drawWorker.shutdown();
+      drawWorker = null;
+    } else if (pendingTearDown != null) {
+      pendingTearDown.whenComplete((Void v, Throwable t) -> disposeGraphics());
+    } else {
+      disposeGraphics();
+    }
+    super.dispose();
+  }
+
+  private void disposeGraphics() {
+    try {
+      synchronized (pgLock) {
+        releaseGraphics();
+      }
+    } catch (RuntimeException rex) {
+      logger.log(Level.WARNING, "Error releasing graphics of " + getLabel(), rex);
+    }
+  }
+
+  /**
+   * Releases pg and the async snapshots to the {@link GraphicsPool} once the pattern is disposed.
+   * Subclasses that acquire pooled buffers of their own release them here and call
+   * {@code super.releaseGraphics()}.  Runs with pgLock held.
+   */
+  protected void releaseGraphics() {
+    GraphicsPool.release(pg);
+    pg = null;
+    for (int i = 0; i < snapshots.length; i++) {
+      GraphicsPool.release(snapshots[i]);
+      snapshots[i] = null;
+    }
+  }
+
+  /**
+   * Whether this pattern may draw off the engine thread when {@link #asyncDraw} is on.  Only Java2D
+   * drawing is thread safe this way; patterns that draw through an OpenGL surface of their own must
+   * return false.
+   */
+  protected boolean canDrawAsync() {
+    return !P3D.equals(drawMode) && !P2D.equals(drawMode);
   }
 
   @Override
   public void render(double deltaMs) {
+    long renderStart = System.nanoTime();
+    // Switch over once the projection for the Super knob, or the governor's level below it, has
+    // been built with the tables for the Filter knob.  Until then the current one keeps rendering.
+    int targetSuperSampling = governor.superSampling(superSampling.getValuei());
+    if (ConeDown.isProjectionReady(targetSuperSampling, filter.getEnum())) {
+      Projection target = ConeDown.getProjection(targetSuperSampling, filter.getEnum());
+      if (target.factor() != projection.factor()) {
+        updateParams();
+      } else if (target != projection) {
+        projection = target;
+        frameDirty = true;
+      }
+    }
     if (!setupCalled) {
-      pg.beginDraw();
-      setup();
-      pg.endDraw();
+      if (pendingTearDown != null && !pendingTearDown.isDone()) {
+        // Still tearing down the last activation; set up again once it is done.
+        return;
+      }
+      pendingTearDown = null;
+      synchronized (pgLock) {
+        pg.beginDraw();
+        setup();
+        pg.endDraw();
+      }
       setupCalled = true;
+      frameDirty = true;
     }
+    boolean async = asyncDraw.getValueb() && canDrawAsync();
 
     double fps = fpsKnob.getValue();
     currentFrame += (deltaMs / 1000.0) * fps;
@@ -152,13 +327,23 @@ abstract class PGBase extends RPattern {
       // UPDATE: Removed this code because Processing already makes a best effort,
       //         and, in addition, the program crashes anyway if multithreading is
       //         set to 'true'.
-      preDraw(deltaDrawMs);
-      pg.beginDraw();
-      draw(deltaDrawMs);
-      pg.endDraw();
-
+      if (!async) {
+        synchronized (pgLock) {
+          drawFrame(deltaDrawMs, targetSize);
+        }
+        deltaDrawMs = 0.0;
+        frameDirty = true;
+        frameDrawn = true;
+      } else if (drawPending.compareAndSet(false, true)) {
+        final double drawMs = deltaDrawMs;
+        final RenderSize frameSize = targetSize;
+        startDrawWorker().execute(() -> drawAsync(drawMs, frameSize));
+        deltaDrawMs = 0.0;
+      } else {
+        // Still drawing the last frame.  Skip this one and give its time to the next.
+        samplingMetrics.lateFrame();
+      }
       previousFrame = (int) currentFrame;
-      deltaDrawMs = 0.0;
     }
     // Don't let current frame increment forever.  Otherwise float will
     // begin to lose precision and things get wonky.
@@ -166,11 +351,122 @@ abstract class PGBase extends RPattern {
       currentFrame = 0.0;
       previousFrame = -1;
     }
-    imageToPoints();
+    if (async && (middle.get() & FRESH) != 0) {
+      front = middle.getAndSet(front) & ~FRESH;
+      frameDirty = true;
+      frameDrawn = true;
+    }
+    int[] sampled = frames.current();
+    if (frameDirty || sampled == null || sampled.length != colors.length) {
+      long start = System.nanoTime();
+      if (async) {
+        // A frame drawn before a resize is skipped, it does not match the projection.
+        PImage snapshot = snapshots[front];
+        RenderSize expected = targetSize;
+        if (snapshot != null && snapshot.pixelWidth == expected.width && snapshot.pixelHeight == expected.height) {
+          imageToPoints(snapshot);
+        }
+      } else {
+        synchronized (pgLock) {
+          applySize(targetSize);
+          imageToPoints();
+        }
+      }
+      long sampleNanos = System.nanoTime() - start;
+      samplingMetrics.sampled(sampleNanos);
+      sampleTimes.record(sampleNanos);
+      frames.push(colors, frameDrawn);
+      frameDirty = false;
+      frameDrawn = false;
+      if (smooth.getValueb()) {
+        frames.blend(currentFrame - (int) currentFrame, colors);
+      }
+    } else {
+      // Nothing new was drawn, so the last sample is still current.
+      long start = System.nanoTime();
+      if (smooth.getValueb()) {
+        frames.blend(currentFrame - (int) currentFrame, colors);
+      } else {
+        System.arraycopy(sampled, 0, colors, 0, colors.length);
+      }
+      samplingMetrics.reused(System.nanoTime() - start);
+    }
+    long renderNanos = System.nanoTime() - renderStart + workerNanos.getAndSet(0);
+    governor.tick(renderNanos, projection.factor(), superSampling.getValuei());
+  }
+
+  /** Runs preDraw() and draw() into pg at frameSize, timing each.  Callers hold pgLock. */
+  private void drawFrame(double drawMs, RenderSize frameSize) {
+    applySize(frameSize);
+    long start = System.nanoTime();
+    preDraw(drawMs);
+    long drawStart = System.nanoTime();
+    preDrawTimes.record(drawStart - start);
+    pg.beginDraw();
+    draw(drawMs);
+    pg.endDraw();
+    drawTimes.recordSince(drawStart);
+  }
+
+  /** Reallocates pg if next is not the size it was last allocated at.  Callers hold pgLock. */
+  private void applySize(RenderSize next) {
+    if (next == size) {
+      return;
+    }
+    size = next;
+    renderWidth = next.width;
+    renderHeight = next.height;
+    createPGraphics();
+  }
+
+  /**
+   * Draws one frame on the draw worker and publishes a copy of it as the latest finished frame.  The
+   * snapshot at back belongs to the worker, so only the draw itself needs pgLock.
+   */
+  private void drawAsync(double drawMs, RenderSize frameSize) {
+    long start = System.nanoTime();
+    try {
+      PImage snapshot;
+      synchronized (pgLock) {
+        drawFrame(drawMs, frameSize);
+
+        pg.loadPixels();
+        snapshot = snapshots[back];
+        if (snapshot == null || snapshot.pixelWidth != pg.pixelWidth || snapshot.pixelHeight != pg.pixelHeight
+            || snapshot.format != pg.format) {
+          GraphicsPool.release(snapshot);
+          snapshot = snapshots[back] = GraphicsPool.acquireImage(pg.pixelWidth, pg.pixelHeight, pg.format);
+        }
+        System.arraycopy(pg.pixels, 0, snapshot.pixels, 0, snapshot.pixels.length);
+      }
+      back = middle.getAndSet(back | FRESH) & ~FRESH;
+    } catch (RuntimeException rex) {
+      logger.log(Level.WARNING, "Error drawing " + getLabel(), rex);
+    } finally {
+      workerNanos.addAndGet(System.nanoTime() - start);
+      drawPending.set(false);
+    }
+  }
+
+  private ExecutorService startDrawWorker() {
+    if (drawWorker == null) {
+      final String name = "Draw " + getLabel();
+      drawWorker = Executors.newSingleThreadExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return drawWorker;
   }
 
   // Responsible for projecting points into `colors`.
-  protected abstract void imageToPoints();
+  protected void imageToPoints() {
+    imageToPoints(pg);
+  }
+
+  // Projects a finished frame, either pg itself or a copy of it, into `colors`.
+  protected abstract void imageToPoints(PImage image);
 
   /**
    * Called once before all the draw calls, similar to how a Processing sketch has a setup()
@@ -186,6 +482,10 @@ abstract class PGBase extends RPattern {
   /**
    * Called when {@link #onInactive()} is called. That method has been made {@code final}
    * so that it can guarantee {@link #setup()} is called. This may change in the future.
+   * <p>
+   * With {@link #asyncDraw} on this runs on the draw worker, after the last frame it drew and with
+   * pg locked, rather than on the engine thread.  It must not touch state the engine reads without
+   * synchronization.</p>
    */
   @Beta
   protected void tearDown() {
@@ -197,7 +497,24 @@ abstract class PGBase extends RPattern {
   protected void preDraw(double deltaDrawMs) {
   }
 
+  /**
+   * The super-sampling factor pg is drawn at.  This is the Super knob's value except while the
+   * projection for it is still being built, or while the governor holds it lower.
+   */
   protected int getSuperSampling() {
-      return (int) superSampling.getValue();
+      return size.superSampling;
+  }
+
+  /** A size to draw pg at, fixed for the frame it is handed to. */
+  static final class RenderSize {
+    final int width;
+    final int height;
+    final int superSampling;
+
+    RenderSize(int width, int height, int superSampling) {
+      this.width = width;
+      this.height = height;
+      this.superSampling = superSampling;
+    }
   }
 }
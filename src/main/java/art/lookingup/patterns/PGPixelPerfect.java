@@ -3,6 +3,7 @@ package art.lookingup.patterns;
 import art.lookingup.ConeDownModel;
 import art.lookingup.ConeDown;
 import heronarts.lx.LX;
+import processing.core.PImage;
 
 /**
  * Abstract base class for pixel perfect Processing drawings.  Use this
@@ -19,8 +20,8 @@ abstract class PGPixelPerfect extends PGBase {
     super(lx, width, height, drawMode);
   }
 
-  protected void imageToPoints() {
-      RenderImageUtil.sampleRenderTarget(projection, renderTarget.getValuei(), pg, colors, 0 ,0);
+  protected void imageToPoints(PImage image) {
+      RenderImageUtil.sampleRenderTarget(projection, renderTarget.getValuei(), image, colors, 0 ,0);
   }
 
   // Implement PGGraphics drawing code here.  PGPixelPerfect handles beginDraw()/endDraw();
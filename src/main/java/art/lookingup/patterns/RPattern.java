@@ -1,10 +1,12 @@
 package art.lookingup.patterns;
 
+import art.lookingup.FrameProfiler;
 import heronarts.lx.LX;
 import heronarts.lx.LXPattern;
 
 // Abstract base pattern for intercepting rendering calls.
 abstract public class RPattern extends LXPattern {
+  private final FrameProfiler.Histogram runTimes = FrameProfiler.histogram(getClass().getSimpleName() + ".run");
 
   public RPattern(LX lx) {
     super(lx);
@@ -12,7 +14,9 @@ abstract public class RPattern extends LXPattern {
 
   @Override
   public void run(double deltaMs) {
+    long start = System.nanoTime();
     render(deltaMs);
+    runTimes.recordSince(start);
   }
 
   /** Render your pattern here.
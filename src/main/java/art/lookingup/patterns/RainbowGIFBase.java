@@ -55,6 +55,9 @@ abstract class RainbowGIFBase extends RPattern implements CustomDeviceUI {
       new DiscreteParameter("Tgt", 0, 0, 6);
   public final DiscreteParameter superSampling =
       new DiscreteParameter("Super", ConeDown.DEFAULT_SUPER_SAMPLING, ConeDown.MIN_SUPER_SAMPLING, ConeDown.MAX_SUPER_SAMPLING + 1);
+  public final BooleanParameter smooth =
+      new BooleanParameter("Smooth", false)
+          .setDescription("Blend from one gif frame to the next");
 
 
   protected List<FileItem> fileItems = new ArrayList<FileItem>();
@@ -68,6 +71,9 @@ abstract class RainbowGIFBase extends RPattern implements CustomDeviceUI {
   protected int imageHeight = 0;
   protected String filesDir;  // Must end in a '/'
   boolean includeAntialias;
+  // The last two gif frames sampled to the points, for smoothing.
+  private final FrameBlender frames = new FrameBlender();
+  private int sampledFrame = -1;
 
   public RainbowGIFBase(LX lx, int imageWidth, int imageHeight, String dir,
                         String defaultFile, boolean includeAntialias) {
@@ -90,6 +96,7 @@ abstract class RainbowGIFBase extends RPattern implements CustomDeviceUI {
     addParameter(yOff);
 
     if (includeAntialias) addParameter(antialiasKnob);
+    addParameter(smooth);
     addParameter(gifKnob);
     gifKnob.addListener(new LXParameterListener() {
       @Override
@@ -136,6 +143,13 @@ abstract class RainbowGIFBase extends RPattern implements CustomDeviceUI {
     }
     catch (ArrayIndexOutOfBoundsException ex) {
       // Sometimes caused by race condition when reloading, just skip a frame.
+      return;
+    }
+    if (smooth.getValueb()) {
+      // Resampled every tick so the knobs stay live, it only moves to previous on a new gif frame.
+      frames.push(colors, (int) currentFrame != sampledFrame);
+      sampledFrame = (int) currentFrame;
+      frames.blend(currentFrame - (int) currentFrame, colors);
     }
   }
 
@@ -205,6 +219,10 @@ abstract class RainbowGIFBase extends RPattern implements CustomDeviceUI {
     fitButton.setMomentary(false);
     fitButton.addToContainer(knobsContainer);
     new UIKnob(renderTarget).addToContainer(knobsContainer);
+    UISwitch smoothButton = new UISwitch(0, 0);
+    smoothButton.setParameter(smooth);
+    smoothButton.setMomentary(false);
+    smoothButton.addToContainer(knobsContainer);
     knobsContainer.addToContainer(device);
 
 
@@ -110,6 +110,12 @@ public class RainbowParticles extends PGPixelPerfect {
   DwFlowField ff_impulse;
   DwLiquidFX liquidfx;
 
+  // The particles are simulated on P2D surfaces, which must stay on the GL thread.
+  @Override
+  protected boolean canDrawAsync() {
+    return false;
+  }
+
   public void draw(double deltaDrawMs) {
     pg.background(0);
     updateColor();
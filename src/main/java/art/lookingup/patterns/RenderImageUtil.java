@@ -1,15 +1,24 @@
 package art.lookingup.patterns;
 
 import art.lookingup.CXPoint;
-import art.lookingup.ConeDown;
 import art.lookingup.ConeDownModel;
+import art.lookingup.GraphicsPool;
+import art.lookingup.Panel;
 import art.lookingup.Projection;
 
 import heronarts.lx.color.LXColor;
 import heronarts.lx.model.LXModel;
 import heronarts.lx.model.LXPoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Logger;
 
+import processing.core.PConstants;
 import processing.core.PGraphics;
 import processing.core.PImage;
 
@@ -23,11 +32,11 @@ public class RenderImageUtil {
 
   /**
    * Renders the Rainbow Flag into a PImage.  This is used in a multiply mode by the AnimatedTextPP
-   * pattern to avoid having to multiply against another channel.
+   * pattern to avoid having to multiply against another channel.  The graphics come from the
+   * {@link GraphicsPool}, release them when done.
    */
   public static PGraphics rainbowFlagAsPGraphics(int width, int height) {
-    PGraphics rainbow = ConeDown.pApplet.createGraphics(width, height);
-    rainbow.noSmooth();
+    PGraphics rainbow = GraphicsPool.acquire(width, height, PConstants.JAVA2D, 0);
     rainbow.beginDraw();
     rainbow.background(0, 0);
     rainbow.noStroke();
@@ -124,58 +133,191 @@ public class RenderImageUtil {
     pointsHigh *= projection.factor();
     yTexCoordOffset *= projection.factor();
 
-    for (LXPoint p : ConeDownModel.conePoints) {
-      if (renderTarget == 0 || renderTarget == 3 || renderTarget == 4) {
-	colors[p.index] = getRenderColor((CXPoint) p, projection, image,
-					 pointsWide, pointsHigh, yTexCoordOffset,
-					 xOffset, yOffset);	  
+    // The texture begins at yTexCoordOffset.  Subtract by combining w/ yOffset.
+    yOffset -= yTexCoordOffset;
+
+    // When rendering only the dance floor, these are different.  In
+    // that case, apply an offset.
+    int fullWidth = projection.factor() * ConeDownModel.POINTS_WIDE;
+    if (pointsWide != fullWidth) {
+      xOffset -= (fullWidth - pointsWide) / 2;
+    }
+
+    TargetIndices indices = targetIndices();
+    for (int index : indices.clear[renderTarget]) {
+      colors[index] = LXColor.rgba(0, 0, 0, 0);
+    }
+    int[] sample = indices.sample[renderTarget];
+    if (image.format == PConstants.ARGB) {
+      int[][] chunks = indices.chunks[renderTarget];
+      if (parallelSampling && chunks.length > 1
+          && (long) sample.length * projection.factor() * projection.factor() >= parallelMinSubpixels) {
+        ForkJoinPool.commonPool().invoke(new SampleChunks(projection, image.pixels, image.pixelWidth,
+            image.pixelHeight, xOffset, yOffset, chunks, 0, chunks.length, colors));
       } else {
-        colors[p.index] = LXColor.rgba(0, 0, 0, 0);
+        projection.sampleAll(image.pixels, image.pixelWidth, image.pixelHeight, xOffset, yOffset, sample, colors);
+      }
+    } else {
+      // PImage.get() supplies the alpha of RGB and ALPHA images.
+      for (int index : sample) {
+        colors[index] = projection.computePoint(indices.points[index], image, xOffset, yOffset);
       }
     }
+  }
 
-    for (LXPoint p : ConeDownModel.scoopPoints) {
-      if (renderTarget == 0 || renderTarget == 2 || renderTarget == 5 || renderTarget == 4) {
-	colors[p.index] = getRenderColor((CXPoint) p, projection, image,
-					 pointsWide, pointsHigh, yTexCoordOffset,
-					 xOffset, yOffset);
-      } else {
-        colors[p.index] = LXColor.rgba(0, 0, 0, 0);
+  public static final int NUM_RENDER_TARGETS = 6;
+
+  // Set from UIRenderConfig.  Frames whose approximate subpixel reads, points times the
+  // super-sampling factor squared, fall below parallelMinSubpixels stay on the calling thread.
+  public static volatile boolean parallelSampling = false;
+  public static volatile int parallelMinSubpixels = 20000;
+
+  // Smallest chunk, in points, when splitting a target's points by panel.
+  static final int MIN_CHUNK_POINTS = 128;
+
+  /**
+   * Samples a range of chunks on the common fork-join pool, splitting in halves.  invoke() returns
+   * once every chunk of the frame has been written.
+   */
+  static class SampleChunks extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final Projection projection;
+    final int[] pixels;
+    final int width;
+    final int height;
+    final int xOffset;
+    final int yOffset;
+    final int[][] chunks;
+    final int from;
+    final int to;
+    final int[] colors;
+
+    SampleChunks(Projection projection, int[] pixels, int width, int height, int xOffset, int yOffset,
+                 int[][] chunks, int from, int to, int[] colors) {
+      this.projection = projection;
+      this.pixels = pixels;
+      this.width = width;
+      this.height = height;
+      this.xOffset = xOffset;
+      this.yOffset = yOffset;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+      this.colors = colors;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new SampleChunks(projection, pixels, width, height, xOffset, yOffset, chunks, from, mid, colors),
+                  new SampleChunks(projection, pixels, width, height, xOffset, yOffset, chunks, mid, to, colors));
+        return;
       }
+      projection.sampleAll(pixels, width, height, xOffset, yOffset, chunks[from], colors);
     }
+  }
 
-    for (LXPoint p : ConeDownModel.dancePoints) {
-      if (renderTarget == 0 || renderTarget == 1 || renderTarget == 5) {
-	colors[p.index] = getRenderColor((CXPoint) p, projection, image,
-					 pointsWide, pointsHigh, yTexCoordOffset,
-					 xOffset, yOffset);
-      } else {
-        colors[p.index] = LXColor.rgba(0, 0, 0, 0);
+  /**
+   * For each render target, the indices of the cone, scoop and dance floor points it samples and of
+   * those it clears.
+   */
+  static class TargetIndices {
+    final int[][] sample = new int[NUM_RENDER_TARGETS][];
+    final int[][] clear = new int[NUM_RENDER_TARGETS][];
+    // sample[] split by panel, small panels merged, for parallel sampling.
+    final int[][][] chunks = new int[NUM_RENDER_TARGETS][][];
+    final CXPoint[] points;
+
+    TargetIndices() {
+      int[] all = concat(ConeDownModel.conePoints, ConeDownModel.scoopPoints, ConeDownModel.dancePoints);
+      int maxIndex = -1;
+      for (int index : all) {
+        maxIndex = Math.max(maxIndex, index);
+      }
+      points = new CXPoint[maxIndex + 1];
+      for (List<LXPoint> group : Arrays.asList(ConeDownModel.conePoints, ConeDownModel.scoopPoints,
+                                               ConeDownModel.dancePoints)) {
+        for (LXPoint p : group) {
+          points[p.index] = (CXPoint) p;
+        }
+      }
+      for (int target = 0; target < NUM_RENDER_TARGETS; target++) {
+        boolean cone = target == 0 || target == 3 || target == 4;
+        boolean scoop = target == 0 || target == 2 || target == 5 || target == 4;
+        boolean dance = target == 0 || target == 1 || target == 5;
+        sample[target] = concat(cone ? ConeDownModel.conePoints : null,
+                                scoop ? ConeDownModel.scoopPoints : null,
+                                dance ? ConeDownModel.dancePoints : null);
+        clear[target] = concat(cone ? null : ConeDownModel.conePoints,
+                               scoop ? null : ConeDownModel.scoopPoints,
+                               dance ? null : ConeDownModel.dancePoints);
+        chunks[target] = chunkByPanel(sample[target]);
+      }
+    }
+
+    int[][] chunkByPanel(int[] indices) {
+      Map<Panel, List<Integer>> byPanel = new LinkedHashMap<Panel, List<Integer>>();
+      for (int index : indices) {
+        Panel panel = points[index].panel;
+        if (!byPanel.containsKey(panel)) {
+          byPanel.put(panel, new ArrayList<Integer>());
+        }
+        byPanel.get(panel).add(index);
+      }
+      List<int[]> chunks = new ArrayList<int[]>();
+      List<Integer> chunk = new ArrayList<Integer>();
+      for (List<Integer> panelPoints : byPanel.values()) {
+        chunk.addAll(panelPoints);
+        if (chunk.size() >= MIN_CHUNK_POINTS) {
+          chunks.add(toArray(chunk));
+          chunk.clear();
+        }
+      }
+      if (!chunk.isEmpty()) {
+        chunks.add(toArray(chunk));
       }
+      return chunks.toArray(new int[chunks.size()][]);
+    }
+
+    static int[] toArray(List<Integer> list) {
+      int[] array = new int[list.size()];
+      for (int i = 0; i < array.length; i++) {
+        array[i] = list.get(i);
+      }
+      return array;
+    }
+
+    @SafeVarargs
+    static int[] concat(List<LXPoint>... groups) {
+      int size = 0;
+      for (List<LXPoint> group : groups) {
+        size += group == null ? 0 : group.size();
+      }
+      int[] indices = new int[size];
+      int i = 0;
+      for (List<LXPoint> group : groups) {
+        if (group != null) {
+          for (LXPoint p : group) {
+            indices[i++] = p.index;
+          }
+        }
+      }
+      return indices;
     }
   }
 
-  // `cxp` is the physical point being rendered,
-  // `image` is the source data,
-  // `pointsHigh` are the height of the logical image we are mapping from,
-  // `xOffset` and `yOffset` are additional offsets into the image being rendered.
-  static int getRenderColor(CXPoint cxp,
-			    Projection projection,
-			    PImage image,
-			    int pointsWide,
-			    int pointsHigh,
-			    int yTexCoordOffset,
-			    int xOffset,
-			    int yOffset) {
-      // The texture begins at yTexCoordOffset.  Subtract by combining w/ yOffset.
-      yOffset -= yTexCoordOffset;
-
-      // When rendering only the dance floor, these are different.  In
-      // that case, apply an offset.
-      int fullWidth = projection.factor() * ConeDownModel.POINTS_WIDE;
-      if (pointsWide != fullWidth) {
-	  xOffset -= (fullWidth - pointsWide) / 2;
+  private static volatile TargetIndices targetIndices;
+
+  static TargetIndices targetIndices() {
+    if (targetIndices == null) {
+      synchronized (RenderImageUtil.class) {
+        if (targetIndices == null) {
+          targetIndices = new TargetIndices();
+        }
       }
-      return projection.computePoint(cxp, image, xOffset, yOffset);
     }
+    return targetIndices;
+  }
 }
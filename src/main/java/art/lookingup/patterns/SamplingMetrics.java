@@ -0,0 +1,62 @@
+package art.lookingup.patterns;
+
+import heronarts.lx.LXPattern;
+
+/**
+ * Counts, for one {@link PGBase} pattern, how many engine ticks sampled the image to the points and
+ * how many reused the colors sampled for the last drawn frame, along with the time each took.
+ * Written only by the engine thread and read by the UI, so plain volatile fields are enough.
+ */
+public class SamplingMetrics {
+  private volatile long samples;
+  private volatile long sampleNanos;
+  private volatile long reuses;
+  private volatile long reuseNanos;
+  private volatile long lateFrames;
+
+  void sampled(long nanos) {
+    samples++;
+    sampleNanos += nanos;
+  }
+
+  void reused(long nanos) {
+    reuses++;
+    reuseNanos += nanos;
+  }
+
+  void lateFrame() {
+    lateFrames++;
+  }
+
+  public long getSamples() {
+    return samples;
+  }
+
+  public long getReuses() {
+    return reuses;
+  }
+
+  /** Frames skipped because the draw worker was still busy with the previous one. */
+  public long getLateFrames() {
+    return lateFrames;
+  }
+
+  /** Average time to sample one frame, in milliseconds. */
+  public double averageSampleMs() {
+    long n = samples;
+    return n == 0 ? 0.0 : sampleNanos / 1e6 / n;
+  }
+
+  /**
+   * Sampling time avoided so far, in milliseconds: the reused ticks at the average sample time, less
+   * the time spent copying the previous sample back.
+   */
+  public double savedMs() {
+    return reuses * averageSampleMs() - reuseNanos / 1e6;
+  }
+
+  /** The metrics of a pattern that samples a Processing image, or null for any other pattern. */
+  static public SamplingMetrics of(LXPattern pattern) {
+    return pattern instanceof PGBase ? ((PGBase) pattern).samplingMetrics : null;
+  }
+}
@@ -4,6 +4,7 @@ package art.lookingup.patterns;
 import static processing.core.PConstants.P2D;
 
 import art.lookingup.ConeDown;
+import art.lookingup.GraphicsPool;
 import art.lookingup.PathUtils;
 import com.google.gson.JsonObject;
 import com.jogamp.opengl.GL2;
@@ -173,7 +174,15 @@ public class ShaderToy extends PGPixelPerfect implements CustomDeviceUI {
   @Override
   protected void createPGraphics() {
     super.createPGraphics();
-    toyGraphics = ConeDown.pApplet.createGraphics(renderWidth, renderHeight, P2D);
+    GraphicsPool.release(toyGraphics);
+    toyGraphics = GraphicsPool.acquire(renderWidth, renderHeight, P2D);
+  }
+
+  @Override
+  protected void releaseGraphics() {
+    GraphicsPool.release(toyGraphics);
+    toyGraphics = null;
+    super.releaseGraphics();
   }
 
   /**
@@ -251,6 +260,12 @@ public class ShaderToy extends PGPixelPerfect implements CustomDeviceUI {
     }
   }
 
+  // The shader renders to a P2D surface, which must stay on the GL thread.
+  @Override
+  protected boolean canDrawAsync() {
+    return false;
+  }
+
   public void draw(double drawDeltaMs) {
     GraphicMeter eq = lx.engine.audio.meter;
     byte[] fftAudioTex = new byte[1024];
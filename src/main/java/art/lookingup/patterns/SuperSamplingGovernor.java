@@ -0,0 +1,177 @@
+package art.lookingup.patterns;
+
+import art.lookingup.ConeDown;
+import heronarts.lx.LX;
+import heronarts.lx.LXLoopTask;
+import heronarts.lx.LXPattern;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Adapts the super-sampling of the running patterns to hold the engine's frame rate.  Once a second
+ * the engine's average run time is compared to the frame budget.  When it is over the high water mark
+ * of the budget the pattern that cost the most over that second steps down a level.  When it is under,
+ * the pattern whose next level is estimated to cost the least extra steps back up, never past its
+ * Super knob, if the engine then still stays under the low water mark.  Only one pattern steps at a
+ * time, and the governor holds for a while after each step so the new level's cost is measured before
+ * deciding again.
+ * <p>
+ * A pattern's own cost, drawing plus sampling, including drawing done on its draw worker, only picks
+ * which pattern to step, so an expensive pattern steps down before the others do.</p>
+ */
+public class SuperSamplingGovernor {
+  private static final Logger logger = Logger.getLogger(SuperSamplingGovernor.class.getName());
+
+  // Off by default, set from the render config.
+  public static volatile boolean adaptive = false;
+
+  // Fractions of the frame budget.
+  static final double HIGH_WATER = 0.9;
+  static final double LOW_WATER = 0.7;
+  static final double WINDOW_MS = 1000.0;
+  // Windows to skip after a step.
+  static final int HOLD_WINDOWS = 2;
+
+  // Governors of patterns that rendered since the last decision.
+  private static final Set<SuperSamplingGovernor> governors = ConcurrentHashMap.newKeySet();
+  private static final Object lock = new Object();
+  private static LX engineLx;
+  private static double windowMs = 0.0;
+  private static int frames = 0;
+  private static long engineNanos = 0;
+  private static int hold = 0;
+
+  private final LXPattern pattern;
+  // Upper bound on the level, below the knob only while the engine is over its budget.
+  private volatile int level = ConeDown.MAX_SUPER_SAMPLING;
+
+  // Written by tick() and read by decide(), both with lock held.
+  private int ticks = 0;
+  private long patternNanos = 0;
+  private int current = ConeDown.MAX_SUPER_SAMPLING;
+  private int requested = ConeDown.MAX_SUPER_SAMPLING;
+
+  SuperSamplingGovernor(LX lx, LXPattern pattern) {
+    this.pattern = pattern;
+    synchronized (lock) {
+      if (engineLx == null) {
+        engineLx = lx;
+        lx.engine.addLoopTask(new LXLoopTask() {
+          public void loop(double deltaMs) {
+            sampleEngine(deltaMs);
+          }
+        });
+      }
+    }
+  }
+
+  /** The level to render at for a Super knob value. */
+  int superSampling(int requested) {
+    return adaptive ? Math.min(requested, level) : requested;
+  }
+
+  /**
+   * Accounts one engine tick of the pattern.
+   *
+   * @param nanos The time the pattern took this tick, including any drawing finished on its worker.
+   * @param current The level the pattern rendered at.
+   * @param requested The Super knob value.
+   */
+  void tick(long nanos, int current, int requested) {
+    if (!adaptive) {
+      level = ConeDown.MAX_SUPER_SAMPLING;
+      return;
+    }
+    synchronized (lock) {
+      ticks++;
+      patternNanos += nanos;
+      this.current = current;
+      this.requested = requested;
+    }
+    governors.add(this);
+  }
+
+  // Runs once per engine frame, after the last frame's run time is known.
+  private static void sampleEngine(double deltaMs) {
+    if (!adaptive) {
+      synchronized (lock) {
+        windowMs = 0.0;
+        frames = 0;
+        engineNanos = 0;
+        hold = 0;
+      }
+      governors.clear();
+      return;
+    }
+    synchronized (lock) {
+      windowMs += deltaMs;
+      frames++;
+      engineNanos += engineLx.engine.timer.runNanos;
+      if (windowMs >= WINDOW_MS) {
+        decide();
+        windowMs = 0.0;
+        frames = 0;
+        engineNanos = 0;
+      }
+    }
+  }
+
+  // Steps at most one pattern up or down.  Called with lock held.
+  private static void decide() {
+    double engineMs = engineNanos / 1e6 / frames;
+    double budgetMs = 1000.0 / engineLx.engine.framesPerSecond.getValue();
+    SuperSamplingGovernor costliest = null;
+    SuperSamplingGovernor cheapest = null;
+    double costliestMs = 0.0;
+    double cheapestMs = 0.0;
+    double cheapestExtraMs = Double.MAX_VALUE;
+    for (Iterator<SuperSamplingGovernor> it = governors.iterator(); it.hasNext(); ) {
+      SuperSamplingGovernor governor = it.next();
+      if (governor.ticks == 0) {
+        // Not rendered this window.
+        it.remove();
+        continue;
+      }
+      double patternMs = governor.patternNanos / 1e6 / governor.ticks;
+      governor.ticks = 0;
+      governor.patternNanos = 0;
+      int current = governor.current;
+      if (current > ConeDown.MIN_SUPER_SAMPLING && patternMs > costliestMs) {
+        costliest = governor;
+        costliestMs = patternMs;
+      }
+      if (current < governor.requested) {
+        // Cost grows with the number of subpixels.
+        int next = current + 1;
+        double extraMs = patternMs * (next * next - current * current) / (current * current);
+        if (extraMs < cheapestExtraMs) {
+          cheapest = governor;
+          cheapestMs = patternMs;
+          cheapestExtraMs = extraMs;
+        }
+      }
+    }
+    if (hold > 0) {
+      hold--;
+      return;
+    }
+
+    if (engineMs > budgetMs * HIGH_WATER) {
+      if (costliest != null) {
+        costliest.adjust(costliest.current - 1, costliestMs, engineMs, budgetMs);
+      }
+    } else if (cheapest != null && engineMs + cheapestExtraMs < budgetMs * LOW_WATER) {
+      cheapest.adjust(cheapest.current + 1, cheapestMs, engineMs, budgetMs);
+    }
+  }
+
+  private void adjust(int to, double patternMs, double engineMs, double budgetMs) {
+    logger.info(String.format("%s super-sampling %dx -> %dx (pattern %.1fms, engine %.1fms, budget %.1fms)",
+        pattern.getLabel(), current, to, patternMs, engineMs, budgetMs));
+    level = to;
+    hold = HOLD_WINDOWS;
+  }
+}
@@ -2,8 +2,9 @@ package art.lookingup.patterns.play;
 
 import static processing.core.PConstants.P2D;
 
-import art.lookingup.CXPoint;
 import art.lookingup.ConeDown;
+import art.lookingup.FrameProfiler;
+import art.lookingup.GraphicsPool;
 import art.lookingup.Projection;
 import art.lookingup.patterns.RenderImageUtil;
 
@@ -15,7 +16,6 @@ import java.util.List;
 
 import heronarts.lx.LX;
 import heronarts.lx.LXPattern;
-import heronarts.lx.model.LXPoint;
 
 import processing.core.PApplet;
 import processing.core.PGraphics;
@@ -35,6 +35,8 @@ abstract public class Pattern extends LXPattern {
 	new CompoundParameter("GlobalSpeed", 1, 0, 2)
         .setDescription("Varies global speed.");
 
+    private final FrameProfiler.Histogram renderTimes = FrameProfiler.histogram(getClass().getSimpleName() + ".render");
+
     boolean init;
     float current;
     float elapsed;
@@ -59,7 +61,9 @@ abstract public class Pattern extends LXPattern {
 
     @Override
     public void run(double deltaMs) {
+	long start = System.nanoTime();
 	render(deltaMs);
+	renderTimes.recordSince(start);
     }
 
     @Override
@@ -72,17 +76,29 @@ abstract public class Pattern extends LXPattern {
 	// Hmm
     }
 
-    static PGraphics createGraphics(PApplet app, int width, int height) {
-	if (gtype == "") {
-	    return app.createGraphics(width, height);
+    @Override
+    public void dispose() {
+	// Hand the fragment's area back to the pool.
+	if (frag != null && frag.area != null) {
+	    GraphicsPool.release(frag.area);
+	    frag.area = null;
 	}
-	return app.createGraphics(width, height, gtype);
+	super.dispose();
+    }
+
+    // Fragment areas come from the shared pool and are held for the life of the pattern.
+    static PGraphics createGraphics(PApplet app, int width, int height) {
+	return GraphicsPool.acquire(width, height, gtype);
     }
 
     void render(double deltaMs) {
 	current += (float)(speedKnob.getValue() * (deltaMs / 1e3));
 
 	if (!init) {
+	    // The fragments are sized for this level, wait until it is built.
+	    if (!ConeDown.isProjectionReady(superSampling)) {
+		return;
+	    }
 	    init = true;
 
 	    frag.create(this);
@@ -100,10 +116,7 @@ abstract public class Pattern extends LXPattern {
 	//     frag.image.save(String.format("/Users/jmacd/Desktop/dump/canvas-%s.png", counter++));
 	// }
 	
-	for (LXPoint p : lx.getModel().points) {
-	    colors[p.index] = ConeDown.getProjection(superSampling).
-		computePoint((CXPoint) p, frag.image, 0, 0);
-	}
+	RenderImageUtil.sampleRenderTarget(ConeDown.getProjection(superSampling), 0, frag.image, colors, 0, 0);
 
 	elapsed = current;
     }
@@ -2,7 +2,7 @@ package art.lookingup.ui;
 
 import art.lookingup.Output;
 import heronarts.lx.LX;
-import heronarts.lx.output.LXDatagramOutput;
+import heronarts.lx.output.LXOutput;
 import heronarts.lx.parameter.BooleanParameter;
 import heronarts.lx.parameter.LXParameter;
 import heronarts.lx.studio.LXStudio;
@@ -82,7 +82,7 @@ public class UIGalacticJungle extends UIConfig {
     // NOTE(tracy): outputGalacticJungle always adds the output in a disabled state.
     if (parameterChanged) {
       boolean originalEnabled = lx.engine.output.enabled.getValueb();
-      LXDatagramOutput galacticOutput = Output.carOutput;
+      LXOutput galacticOutput = Output.carOutput;
       boolean originalGalacticOutput = false;
       if (galacticOutput != null)
         originalGalacticOutput = galacticOutput.enabled.getValueb();
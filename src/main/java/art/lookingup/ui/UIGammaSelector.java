@@ -8,6 +8,7 @@ public class UIGammaSelector extends UIConfig {
   public static final String RED = "Red";
   public static final String GREEN = "Green";
   public static final String BLUE = "Blue";
+  public static final String WHITE_POINT = "WhiteK";
 
   public static final String title = "GAMMA";
   public static final String filename = "gamma.json";
@@ -18,8 +19,15 @@ public class UIGammaSelector extends UIConfig {
     registerCompoundParameter(RED, 1.8, 1.0, 3.0);
     registerCompoundParameter(GREEN, 1.8, 1.0, 3.0);
     registerCompoundParameter(BLUE, 1.8, 1.0, 3.0);
+    registerCompoundParameter(WHITE_POINT, Gamma.DEFAULT_WHITE_POINT, 2000.0, 10000.0);
     save();
     buildUI(ui);
+    requestOutputLUT();
+  }
+
+  private void requestOutputLUT() {
+    Gamma.requestOutputLUT(getCompoundParameter(RED).getValuef(), getCompoundParameter(GREEN).getValuef(),
+        getCompoundParameter(BLUE).getValuef(), getCompoundParameter(WHITE_POINT).getValuef());
   }
 
   @Override
@@ -32,5 +40,6 @@ public class UIGammaSelector extends UIConfig {
     } else if (BLUE.equals(p.getLabel())) {
       Gamma.buildBlueGammaLUT(p.getValuef());
     }
+    requestOutputLUT();
   }
 }
@@ -0,0 +1,64 @@
+package art.lookingup.ui;
+
+import art.lookingup.Output;
+import art.lookingup.UniverseOutput;
+import heronarts.lx.LX;
+import heronarts.lx.parameter.LXParameter;
+import heronarts.lx.studio.LXStudio;
+
+/**
+ * Runtime settings for the output stage.  Unlike {@link UIPixliteConfig} these do not require
+ * rebuilding the outputs, they are applied to the running outputs as soon as they change.
+ */
+public class UIOutputConfig extends UIConfig {
+  public static final String THREADED = "threaded";
+  public static final String DIFF_SEND = "diffsend";
+  public static final String KEEPALIVE_MS = "KeepMs";
+  public static final String DITHER = "dither";
+  public static final String RECORD = "record";
+  // Output pacer rate, 0 sends once per engine frame.
+  public static final String PACER_FPS = "PaceFps";
+  public static final String PACER_BLEND = "paceblend";
+
+  public static final String title = "output";
+  public static final String filename = "outputconfig.json";
+  public LX lx;
+
+  public UIOutputConfig(final LXStudio.UI ui, LX lx) {
+    super(ui, title, filename);
+    this.lx = lx;
+
+    registerBooleanParameter(THREADED, false);
+    registerBooleanParameter(DIFF_SEND, false);
+    registerCompoundParameter(KEEPALIVE_MS, 1000.0, 50.0, 4000.0);
+    registerBooleanParameter(DITHER, false);
+    registerBooleanParameter(RECORD, false);
+    registerCompoundParameter(PACER_FPS, 0.0, 0.0, 120.0);
+    registerBooleanParameter(PACER_BLEND, false);
+
+    save();
+
+    buildUI(ui);
+  }
+
+  /**
+   * Applies the current settings to an output.  Called by {@link Output} whenever it builds a new one.
+   */
+  public void apply(UniverseOutput output) {
+    if (output == null) return;
+    output.setThreaded(getBooleanParameter(THREADED).getValueb());
+    output.setDiffSend(getBooleanParameter(DIFF_SEND).getValueb(), getCompoundParameter(KEEPALIVE_MS).getValue());
+    output.setDither(getBooleanParameter(DITHER).getValueb());
+    output.setPacer(Math.round(getCompoundParameter(PACER_FPS).getValue()),
+        getBooleanParameter(PACER_BLEND).getValueb());
+    output.setRecording(getBooleanParameter(RECORD).getValueb(),
+        output == Output.carOutput ? "capture-cars" : "capture-pixlite");
+  }
+
+  @Override
+  public void onParameterChanged(LXParameter p) {
+    super.onParameterChanged(p);
+    apply(Output.pixliteOutput);
+    apply(Output.carOutput);
+  }
+}
@@ -8,6 +8,26 @@ import heronarts.lx.studio.LXStudio;
 public class UIPixliteConfig extends UIConfig {
   public static final String PIXLITE_1_IP = "ip1";
   public static final String PIXLITE_1_PORT = "port1";
+  // E1.31 settings.  In sACN mode the port is always 5568.
+  public static final String PIXLITE_1_SACN = "sacn1";
+  public static final String PIXLITE_1_MULTICAST = "mcast1";
+  public static final String PIXLITE_1_PRIORITY = "prio1";
+  public static final String PIXLITE_1_SYNC_UNIVERSE = "sync1";
+  // Additional controllers.  A controller is used when its universe list is not empty and takes those
+  // universes away from controller 1.  The list holds universe numbers, ranges such as 48-51 and the
+  // region names sixteenths (the cone and scoop wiring), dance and interior, separated by commas.  The
+  // sACN priority and sync universe of controller 1 are shared by all controllers.
+  public static final int NUM_PIXLITES = 3;
+  public static final String PIXLITE_2_IP = "ip2";
+  public static final String PIXLITE_2_PORT = "port2";
+  public static final String PIXLITE_2_SACN = "sacn2";
+  public static final String PIXLITE_2_MULTICAST = "mcast2";
+  public static final String PIXLITE_2_UNIVERSES = "univ2";
+  public static final String PIXLITE_3_IP = "ip3";
+  public static final String PIXLITE_3_PORT = "port3";
+  public static final String PIXLITE_3_SACN = "sacn3";
+  public static final String PIXLITE_3_MULTICAST = "mcast3";
+  public static final String PIXLITE_3_UNIVERSES = "univ3";
 
   public static final String title = "pixlite";
   public static final String filename = "pixliteconfig.json";
@@ -21,6 +41,21 @@ public class UIPixliteConfig extends UIConfig {
 
     registerStringParameter(PIXLITE_1_IP, "192.168.2.134");
     registerStringParameter(PIXLITE_1_PORT, "6454");
+    registerBooleanParameter(PIXLITE_1_SACN, false);
+    registerBooleanParameter(PIXLITE_1_MULTICAST, false);
+    registerStringParameter(PIXLITE_1_PRIORITY, "100");
+    // 0 disables E1.31 synchronization.
+    registerStringParameter(PIXLITE_1_SYNC_UNIVERSE, "0");
+    registerStringParameter(PIXLITE_2_IP, "192.168.2.135");
+    registerStringParameter(PIXLITE_2_PORT, "6454");
+    registerBooleanParameter(PIXLITE_2_SACN, false);
+    registerBooleanParameter(PIXLITE_2_MULTICAST, false);
+    registerStringParameter(PIXLITE_2_UNIVERSES, "");
+    registerStringParameter(PIXLITE_3_IP, "192.168.2.136");
+    registerStringParameter(PIXLITE_3_PORT, "6454");
+    registerBooleanParameter(PIXLITE_3_SACN, false);
+    registerBooleanParameter(PIXLITE_3_MULTICAST, false);
+    registerStringParameter(PIXLITE_3_UNIVERSES, "");
 
     save();
 
@@ -38,7 +73,10 @@ public class UIPixliteConfig extends UIConfig {
     if (parameterChanged) {
       boolean originalEnabled = lx.engine.output.enabled.getValueb();
       lx.engine.output.enabled.setValue(false);
-      lx.engine.output.removeChild(Output.datagramOutput);
+      if (Output.pixliteOutput != null) {
+        lx.engine.output.removeChild(Output.pixliteOutput);
+        Output.pixliteOutput.dispose();
+      }
       Output.configurePixliteOutput(lx);
       parameterChanged = false;
       lx.engine.output.enabled.setValue(originalEnabled);
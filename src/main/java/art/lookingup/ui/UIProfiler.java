@@ -0,0 +1,60 @@
+package art.lookingup.ui;
+
+import art.lookingup.FrameProfiler;
+import heronarts.lx.studio.LXStudio;
+import heronarts.p3lx.ui.UI2dContainer;
+import heronarts.p3lx.ui.component.UICollapsibleSection;
+import heronarts.p3lx.ui.component.UILabel;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frame times of the busiest patterns, effects and output over the last second, in milliseconds.
+ */
+public class UIProfiler extends UICollapsibleSection {
+  static public final int MAX_ROWS = 10;
+  static public final double REFRESH_MS = 1000.0;
+  static final int NAME_CHARS = 18;
+
+  private final UILabel[] rows = new UILabel[MAX_ROWS];
+  private final Map<FrameProfiler.Histogram, FrameProfiler.Snapshot> previous =
+      new HashMap<FrameProfiler.Histogram, FrameProfiler.Snapshot>();
+  private double elapsedMs = 0.0;
+
+  public UIProfiler(final LXStudio.UI ui) {
+    super(ui, 0, 0, ui.leftPane.global.getContentWidth(), 16 * (MAX_ROWS + 1) + 24);
+    setTitle("PROFILER");
+    setLayout(UI2dContainer.Layout.VERTICAL);
+    setChildMargin(0);
+
+    new UILabel(0, 0, getContentWidth(), 16).setPadding(2, 0)
+        .setLabel(String.format("%-" + NAME_CHARS + "s p50 p95 p99 max", "ms"))
+        .addToContainer(this);
+    for (int i = 0; i < MAX_ROWS; i++) {
+      rows[i] = (UILabel) new UILabel(0, 0, getContentWidth(), 16).setPadding(2, 0).addToContainer(this);
+    }
+    addLoopTask((double deltaMs) -> refresh(deltaMs));
+  }
+
+  private void refresh(double deltaMs) {
+    elapsedMs += deltaMs;
+    if (elapsedMs < REFRESH_MS) {
+      return;
+    }
+    elapsedMs = 0.0;
+
+    List<FrameProfiler.Snapshot> window = FrameProfiler.window(previous);
+    for (int i = 0; i < MAX_ROWS; i++) {
+      if (i >= window.size()) {
+        rows[i].setLabel("");
+        continue;
+      }
+      FrameProfiler.Snapshot s = window.get(i);
+      String name = s.name.length() > NAME_CHARS ? s.name.substring(0, NAME_CHARS) : s.name;
+      rows[i].setLabel(String.format("%-" + NAME_CHARS + "s %.1f %.1f %.1f %.1f", name,
+          s.percentileMs(0.50), s.percentileMs(0.95), s.percentileMs(0.99), s.maxMs()));
+    }
+  }
+}
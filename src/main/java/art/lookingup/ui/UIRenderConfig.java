@@ -0,0 +1,46 @@
+package art.lookingup.ui;
+
+import art.lookingup.patterns.RenderImageUtil;
+import art.lookingup.patterns.SuperSamplingGovernor;
+import heronarts.lx.parameter.LXParameter;
+import heronarts.lx.studio.LXStudio;
+
+/**
+ * Settings for sampling pattern images to the points, applied as soon as they change.
+ */
+public class UIRenderConfig extends UIConfig {
+  // Sample large frames on the shared fork-join pool, split by panel.
+  public static final String PARALLEL = "parallel";
+  // Thousands of subpixel reads per frame below which sampling stays on the engine thread.
+  public static final String PARALLEL_MIN = "ParMinK";
+  // Lower image patterns' super-sampling while the engine runs over its frame budget.
+  public static final String ADAPTIVE = "adaptive";
+
+  public static final String title = "render";
+  public static final String filename = "renderconfig.json";
+
+  public UIRenderConfig(final LXStudio.UI ui) {
+    super(ui, title, filename);
+
+    registerBooleanParameter(PARALLEL, false);
+    registerCompoundParameter(PARALLEL_MIN, 20.0, 1.0, 200.0);
+    registerBooleanParameter(ADAPTIVE, false);
+
+    save();
+
+    buildUI(ui);
+    apply();
+  }
+
+  public void apply() {
+    RenderImageUtil.parallelSampling = getBooleanParameter(PARALLEL).getValueb();
+    RenderImageUtil.parallelMinSubpixels = (int) Math.round(getCompoundParameter(PARALLEL_MIN).getValue() * 1000);
+    SuperSamplingGovernor.adaptive = getBooleanParameter(ADAPTIVE).getValueb();
+  }
+
+  @Override
+  public void onParameterChanged(LXParameter p) {
+    super.onParameterChanged(p);
+    apply();
+  }
+}
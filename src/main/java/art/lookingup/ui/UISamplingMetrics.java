@@ -0,0 +1,105 @@
+package art.lookingup.ui;
+
+import art.lookingup.patterns.SamplingMetrics;
+import heronarts.lx.LX;
+import heronarts.lx.LXChannel;
+import heronarts.lx.LXChannelBus;
+import heronarts.lx.LXGroup;
+import heronarts.lx.LXPattern;
+import heronarts.p3lx.ui.UI2dContainer;
+import heronarts.p3lx.ui.component.UICollapsibleSection;
+import heronarts.p3lx.ui.component.UILabel;
+import heronarts.lx.studio.LXStudio;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows, once a second, how often each active image pattern re-sampled its image to the points,
+ * how much sampling time reusing the last sample saved, and how many frames an asynchronously
+ * drawn pattern was late with.
+ */
+public class UISamplingMetrics extends UICollapsibleSection {
+  static public final int MAX_ROWS = 8;
+  static public final double REFRESH_MS = 1000.0;
+
+  protected LX lx;
+  private final UILabel[] rows = new UILabel[MAX_ROWS];
+  // Counters at the previous refresh: samples, reuses, saved microseconds, late frames.
+  private Map<SamplingMetrics, long[]> previous = new IdentityHashMap<SamplingMetrics, long[]>();
+  private double elapsedMs = 0.0;
+
+  public UISamplingMetrics(final LXStudio.UI ui, LX lx) {
+    super(ui, 0, 0, ui.leftPane.global.getContentWidth(), 16 * MAX_ROWS + 24);
+    setTitle("SAMPLING");
+    setLayout(UI2dContainer.Layout.VERTICAL);
+    setChildMargin(0);
+    this.lx = lx;
+
+    for (int i = 0; i < MAX_ROWS; i++) {
+      rows[i] = (UILabel) new UILabel(0, 0, getContentWidth(), 16).setPadding(2, 0).addToContainer(this);
+    }
+    addLoopTask((double deltaMs) -> refresh(deltaMs));
+  }
+
+  private void refresh(double deltaMs) {
+    elapsedMs += deltaMs;
+    if (elapsedMs < REFRESH_MS) {
+      return;
+    }
+    double seconds = elapsedMs / 1000.0;
+    elapsedMs = 0.0;
+
+    Map<SamplingMetrics, long[]> current = new IdentityHashMap<SamplingMetrics, long[]>();
+    int row = 0;
+    for (LXPattern pattern : activePatterns()) {
+      SamplingMetrics metrics = SamplingMetrics.of(pattern);
+      if (metrics == null || row >= MAX_ROWS) {
+        continue;
+      }
+      long[] now = {metrics.getSamples(), metrics.getReuses(), (long) (metrics.savedMs() * 1000),
+          metrics.getLateFrames()};
+      long[] before = previous.get(metrics);
+      if (before == null) {
+        before = now;
+      }
+      current.put(metrics, now);
+      double samples = (now[0] - before[0]) / seconds;
+      double reuses = (now[1] - before[1]) / seconds;
+      double savedMsPerSec = (now[2] - before[2]) / 1000.0 / seconds;
+      double late = (now[3] - before[3]) / seconds;
+      String label = String.format("%s %.0f/s %.0f reused, -%.1fms/s",
+          pattern.getLabel(), samples + reuses, reuses, savedMsPerSec);
+      if (late > 0) {
+        label += String.format(" %.0f late", late);
+      }
+      rows[row++].setLabel(label);
+    }
+    for (; row < MAX_ROWS; row++) {
+      rows[row].setLabel("");
+    }
+    previous = current;
+  }
+
+  private List<LXPattern> activePatterns() {
+    List<LXPattern> patterns = new ArrayList<LXPattern>();
+    for (LXChannelBus bus : new ArrayList<LXChannelBus>(lx.engine.channels)) {
+      if (bus instanceof LXChannel) {
+        addActivePattern((LXChannel) bus, patterns);
+      } else if (bus instanceof LXGroup) {
+        for (LXChannel c : ((LXGroup) bus).channels) {
+          addActivePattern(c, patterns);
+        }
+      }
+    }
+    return patterns;
+  }
+
+  private void addActivePattern(LXChannel channel, List<LXPattern> patterns) {
+    if (channel.patterns.size() > 0) {
+      patterns.add(channel.getActivePattern());
+    }
+  }
+}